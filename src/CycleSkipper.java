@@ -0,0 +1,101 @@
+import java.util.Objects;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+// Runs a simulation for a target number of steps without simulating them all, by finding when its state starts
+// repeating. Used by Day 14 (tilt cycles) and Day 20 (button presses).
+//
+// The simulation is given as a step function that changes the state in place, and a fingerprint function that
+// returns a 64-bit hash of the current state. The period is found with Brent's algorithm, which only ever keeps
+// one earlier fingerprint around: it remembers the state at step 2^k and compares every following state to it
+// until step 2^(k+1), where it remembers a new one. Once the state comes back round, the whole periods left are
+// skipped and only the remainder is simulated.
+//
+// Two different states with the same fingerprint would be mistaken for a repeat. To rule that out, a snapshot
+// function can be given that returns a copy of the state. A snapshot is only taken when a new fingerprint is
+// remembered, so at most one per power of two, and a matching fingerprint is only trusted if the current
+// snapshot equals the remembered one (compared with Objects.deepEquals, so arrays work). A false match is
+// ignored and the search carries on.
+//
+// Optionally, counters can be given: a function returning running totals that only ever depend on the states
+// passed through (like the number of pulses sent so far). Every period adds the same amount to them, so they
+// are extrapolated over the skipped periods too.
+public class CycleSkipper {
+    // How many steps were actually simulated, the period that was found (0 if the target was reached first),
+    // and the counters extrapolated to the target step (null if there weren't any).
+    public record Result(long simulatedSteps, long period, long[] counters) { }
+
+    // Runs the simulation until the target step, trusting the fingerprints.
+    public static Result run(Runnable step, LongSupplier fingerprint, long target) {
+        return run(step, fingerprint, null, null, target);
+    }
+
+    // Runs the simulation until the target step, checking every matching fingerprint against a snapshot.
+    public static Result run(Runnable step, LongSupplier fingerprint, Supplier<?> snapshot, long target) {
+        return run(step, fingerprint, snapshot, null, target);
+    }
+
+    // Runs the simulation until the target step, extrapolating the counters as well. The snapshot and the
+    // counters can both be null.
+    public static Result run(Runnable step, LongSupplier fingerprint, Supplier<?> snapshot,
+                             Supplier<long[]> counters, long target) {
+        long steps = 0;
+        long power = 1;
+        long period = 1;
+        long saved = fingerprint.getAsLong();
+        Object savedSnapshot = snapshot == null ? null : snapshot.get();
+        long[] savedCounters = counters == null ? null : counters.get();
+
+        while (steps < target) {
+            step.run();
+            steps++;
+
+            long current = fingerprint.getAsLong();
+            if (current == saved && (snapshot == null || Objects.deepEquals(snapshot.get(), savedSnapshot))) {
+                return skip(step, counters, savedCounters, steps, period, target);
+            }
+
+            // Brent's algorithm: at every power of two, start comparing against the current state instead.
+            if (period == power) {
+                saved = current;
+                savedSnapshot = snapshot == null ? null : snapshot.get();
+                savedCounters = counters == null ? null : counters.get();
+                power *= 2;
+                period = 0;
+            }
+            period++;
+        }
+
+        return new Result(steps, 0, counters == null ? null : counters.get());
+    }
+
+    // The state after `steps` steps is the same as the one `period` steps before. Skips the whole periods left
+    // and simulates the rest.
+    private static Result skip(Runnable step, Supplier<long[]> counters, long[] savedCounters,
+                               long steps, long period, long target) {
+        long periods = (target - steps) / period;
+        long remaining = (target - steps) % period;
+
+        long[] perPeriod = null;
+        if (counters != null) {
+            perPeriod = counters.get();
+            for (int i = 0; i < perPeriod.length; i++) {
+                perPeriod[i] -= savedCounters[i];
+            }
+        }
+
+        for (long i = 0; i < remaining; i++) {
+            step.run();
+        }
+
+        long[] result = null;
+        if (counters != null) {
+            result = counters.get();
+            for (int i = 0; i < result.length; i++) {
+                result[i] += periods * perPeriod[i];
+            }
+        }
+
+        return new Result(steps + remaining, period, result);
+    }
+}
\ No newline at end of file
@@ -1,6 +1,12 @@
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 // Represents a row of springs which includes the row itself and a list of sizes of contiguous
 // groups of damaged springs.
@@ -42,6 +48,257 @@ class State {
     }
 }
 
+// Counts arrangements without recursion or per-call allocation. The row is copied into a byte array and the
+// sizes into an int array, and table[i * (groups + 1) + g] holds the number of arrangements of the row from
+// position i onwards using the sizes from index g onwards. dots[i] is the number of '.'s before position i, so
+// checking whether n '#'s fit starting at i is a single subtraction. All buffers are kept between calls and only
+// grow when a longer row comes along, so counting many rows produces next to no garbage.
+class ArrangementCounter {
+    private byte[] row = new byte[0];
+    private int[] dots = new int[1];
+    private int[] sizes = new int[0];
+    private long[] table = new long[0];
+    private int length;
+    private int groups;
+
+    // Returns the number of arrangements of the given row and sizes.
+    public long count(String row, List<Integer> sizes) {
+        return count(row, sizes, 1);
+    }
+
+    // Returns the number of arrangements of the row and sizes unfolded into the given number of copies,
+    // with the row copies separated by '?'s. The unfolded row is written straight into the byte buffer.
+    public long count(String row, List<Integer> sizes, int copies) {
+        int rowLength = row.length();
+        length = rowLength * copies + copies - 1;
+        groups = sizes.size() * copies;
+        ensureCapacity();
+
+        int position = 0;
+        for (int copy = 0; copy < copies; copy++) {
+            if (copy > 0) this.row[position++] = '?';
+            for (int i = 0; i < rowLength; i++) {
+                this.row[position++] = (byte) row.charAt(i);
+            }
+        }
+        for (int i = 0; i < groups; i++) {
+            this.sizes[i] = sizes.get(i % sizes.size());
+        }
+
+        return count();
+    }
+
+    private void ensureCapacity() {
+        if (row.length < length) {
+            row = new byte[length];
+            dots = new int[length + 1];
+        }
+        if (sizes.length < groups) {
+            sizes = new int[groups];
+        }
+        if (table.length < (length + 1) * (groups + 1)) {
+            table = new long[(length + 1) * (groups + 1)];
+        }
+    }
+
+    // Fills the table from the end of the row backwards. Works the same way as the recursive count:
+    // a '.' skips ahead, a '#' has to start the next group and a '?' tries both.
+    private long count() {
+        int width = groups + 1;
+
+        dots[0] = 0;
+        for (int i = 0; i < length; i++) {
+            dots[i + 1] = dots[i] + (row[i] == '.' ? 1 : 0);
+        }
+
+        // At the end of the row, only the state with no sizes left is valid.
+        for (int g = 0; g <= groups; g++) {
+            table[length * width + g] = g == groups ? 1 : 0;
+        }
+
+        for (int i = length - 1; i >= 0; i--) {
+            byte c = row[i];
+            for (int g = 0; g <= groups; g++) {
+                long arrangements = 0;
+
+                // Treat the spring as operational.
+                if (c != '#') {
+                    arrangements += table[(i + 1) * width + g];
+                }
+
+                // Treat the spring as the start of the next group of n damaged springs. It fits if there is
+                // no '.' in the next n positions and the position right after them isn't a '#'.
+                if (c != '.' && g < groups) {
+                    int end = i + sizes[g];
+                    if (end <= length && dots[end] == dots[i] && (end == length || row[end] != '#')) {
+                        arrangements += table[Math.min(end + 1, length) * width + g + 1];
+                    }
+                }
+
+                table[i * width + g] = arrangements;
+            }
+        }
+
+        return table[0];
+    }
+}
+
+// Counts arrangements of a row unfolded into 1, 2, ..., maxFolds copies in a single pass. Instead of building the
+// unfolded string, it walks the repeating pattern (row followed by a '?') from left to right, keeping for every
+// position how many ways there are to have placed g groups so far:
+//   open[g]   - ways where the previous spring is operational (or we're at the start), so a group can start here.
+//   closed[g] - ways where a group has just ended, so this spring has to be operational.
+// The first k copies of the pattern are exactly the row unfolded k times, so the answer for fold k is read off
+// when we reach the end of copy k and the same counts carry on into copy k + 1. Placing a group of n jumps n
+// positions ahead, so the counts are kept in a ring of (largest size + 1) columns, each of which only has values
+// in a small window of g. Memory is proportional to the number of groups in the final fold, and states that
+// can no longer fit their remaining groups into any fold are dropped.
+// That check only looks at lengths, so some states that can never be completed are still counted, and their
+// counts can grow past a long even when every answer fits. So counts are capped at Long.MAX_VALUE instead of
+// throwing. Every count is passed on in full to the states after it, so a capped count only ever leads to
+// capped counts, and any answer below the cap is exact. Folds whose answer reaches the cap are reported as
+// OVERFLOW.
+class FoldedArrangementCounter {
+    public static final long OVERFLOW = -1;
+
+    private final byte[] row;
+    private final int period;
+    private final int[] sizes;
+    private final int[] sizePrefix;
+    private final int sizeTotal;
+    private final int maxFolds;
+    private final int maxGroups;
+    private final int[] runs;
+
+    private final long[][] open;
+    private final long[][] closed;
+    private final int[] low;
+    private final int[] high;
+
+    public FoldedArrangementCounter(String row, List<Integer> sizes, int maxFolds) {
+        this.row = new byte[row.length() + 1];
+        for (int i = 0; i < row.length(); i++) {
+            this.row[i] = (byte) row.charAt(i);
+        }
+        this.row[row.length()] = '?';
+        this.period = this.row.length;
+
+        this.sizes = new int[sizes.size()];
+        this.sizePrefix = new int[sizes.size() + 1];
+        int maxSize = 0;
+        for (int i = 0; i < sizes.size(); i++) {
+            this.sizes[i] = sizes.get(i);
+            this.sizePrefix[i + 1] = this.sizePrefix[i] + this.sizes[i];
+            maxSize = Math.max(maxSize, this.sizes[i]);
+        }
+        this.sizeTotal = this.sizePrefix[sizes.size()];
+        this.maxFolds = maxFolds;
+        this.maxGroups = maxFolds * sizes.size();
+
+        // runs[p] is how many springs in a row starting at p could be damaged, capped at the largest size.
+        this.runs = new int[period];
+        int run = 0;
+        for (int p = period + maxSize - 1; p >= 0; p--) {
+            run = row(p) == '.' ? 0 : Math.min(run + 1, maxSize);
+            if (p < period) runs[p] = run;
+        }
+
+        int ring = maxSize + 1;
+        this.open = new long[ring][maxGroups + 1];
+        this.closed = new long[ring][maxGroups + 1];
+        this.low = new int[ring];
+        this.high = new int[ring];
+        Arrays.fill(low, Integer.MAX_VALUE);
+        Arrays.fill(high, -1);
+    }
+
+    private byte row(int position) {
+        return row[position % period];
+    }
+
+    // Total size of the first g groups of the repeating sizes.
+    private long sizeSum(int g) {
+        return (long) (g / sizes.length) * sizeTotal + sizePrefix[g % sizes.length];
+    }
+
+    // Whether having placed g groups before position can still lead to a valid arrangement for some fold.
+    // For fold m the remaining groups need at least sizeSum(m * |sizes|) - sizeSum(g) damaged springs plus a
+    // separator between each of them, and the row has m * period - 1 springs. The slack is linear in m,
+    // so it's enough to check the smallest fold that could still use this state and the largest one.
+    private boolean isAlive(int position, int g) {
+        int minFold = Math.max(Math.max(1, (g + sizes.length - 1) / sizes.length), (position + period) / period);
+        if (minFold > maxFolds) return false;
+        return slack(minFold, position, g) >= 0 || slack(maxFolds, position, g) >= 0;
+    }
+
+    private long slack(int fold, int position, int g) {
+        return (long) fold * (period - sizeTotal - sizes.length) + sizeSum(g) + g - position;
+    }
+
+    private void add(long[][] counts, int position, int g, long value) {
+        int column = position % open.length;
+        counts[column][g] = addCapped(counts[column][g], value);
+        low[column] = Math.min(low[column], g);
+        high[column] = Math.max(high[column], g);
+    }
+
+    // Adds two non-negative counts, capping the sum at Long.MAX_VALUE.
+    private static long addCapped(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    // Returns an array whose element k is the number of arrangements of the row unfolded into k copies,
+    // for every k from 1 to maxFolds, or OVERFLOW if that number doesn't fit in a long.
+    public long[] countFolds() {
+        long[] arrangements = new long[maxFolds + 1];
+        int end = maxFolds * period - 1;
+        add(open, 0, 0, 1);
+
+        for (int position = 0; ; position++) {
+            int column = position % open.length;
+            long[] currentOpen = open[column];
+            long[] currentClosed = closed[column];
+
+            // The end of copy k is the end of the row unfolded k times.
+            if ((position + 1) % period == 0) {
+                int fold = (position + 1) / period;
+                int groups = fold * sizes.length;
+                long total = addCapped(currentOpen[groups], currentClosed[groups]);
+                arrangements[fold] = total == Long.MAX_VALUE ? OVERFLOW : total;
+                if (position == end) break;
+            }
+
+            byte c = row(position);
+            for (int g = low[column]; g <= high[column]; g++) {
+                long ways = currentOpen[g];
+                long waysClosed = currentClosed[g];
+                currentOpen[g] = 0;
+                currentClosed[g] = 0;
+                if (ways == 0 && waysClosed == 0) continue;
+
+                // Treat the spring as operational.
+                if (c != '#' && isAlive(position + 1, g)) {
+                    add(open, position + 1, g, addCapped(ways, waysClosed));
+                }
+
+                // Treat the spring as the start of the next group, if the group fits before the end.
+                if (c != '.' && ways != 0 && g < maxGroups) {
+                    int n = sizes[g % sizes.length];
+                    if (runs[position % period] >= n && position + n <= end && isAlive(position + n, g + 1)) {
+                        add(closed, position + n, g + 1, ways);
+                    }
+                }
+            }
+
+            low[column] = Integer.MAX_VALUE;
+            high[column] = -1;
+        }
+
+        return arrangements;
+    }
+}
+
 public class Day12_Hot_Springs {
     public static void main(String[] args) {
         File file = new File("./inputs/day12/day12.txt");
@@ -62,10 +319,10 @@ public class Day12_Hot_Springs {
                 rows.add(new SpringRow(tokens[0], groupSizes));
             }
 
-            long part1 = part1(rows);
+            long part1 = part1_dp(rows);
             System.out.println("Part 1 is: " + part1);
 
-            long part2 = part2(rows);
+            long part2 = part2_dp(rows);
             System.out.println("Part 2 is: " + part2);
 
         } catch (IOException exception) {
@@ -195,4 +452,101 @@ public class Day12_Hot_Springs {
 
         return sum;
     }
+
+    // Part 1 DP: Same as part 1, but using a single arrangement counter whose table is reused for every row.
+    private static long part1_dp(List<SpringRow> rows) {
+        ArrangementCounter counter = new ArrangementCounter();
+        long sum = 0;
+
+        for (SpringRow row : rows) {
+            sum += counter.count(row.getRow(), row.getGroupSizes());
+        }
+
+        return sum;
+    }
+
+    // Part 2 DP: Same as part 2, but the counter unfolds each row into its own buffers
+    // instead of building a new string and sizes list.
+    private static long part2_dp(List<SpringRow> rows) {
+        ArrangementCounter counter = new ArrangementCounter();
+        long sum = 0;
+
+        for (SpringRow row : rows) {
+            sum += counter.count(row.getRow(), row.getGroupSizes(), 5);
+        }
+
+        return sum;
+    }
+
+    // Counts the arrangements of every row unfolded into the given number of copies, spreading the rows across
+    // one worker thread per core. Rows are independent, so each worker just takes the next unclaimed row.
+    // Every worker keeps a single arrangement counter for all of its rows, so its table is overwritten
+    // rather than reallocated, and only grows as large as the longest row that worker has seen.
+    private static long countParallel(List<SpringRow> rows, int copies) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        AtomicInteger nextRow = new AtomicInteger();
+        LongAdder sum = new LongAdder();
+
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                workers.add(executor.submit(() -> {
+                    ArrangementCounter counter = new ArrangementCounter();
+                    int i;
+                    while ((i = nextRow.getAndIncrement()) < rows.size()) {
+                        SpringRow row = rows.get(i);
+                        sum.add(counter.count(row.getRow(), row.getGroupSizes(), copies));
+                    }
+                }));
+            }
+
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException | ExecutionException exception) {
+            throw new RuntimeException(exception);
+        } finally {
+            executor.shutdown();
+        }
+
+        return sum.sum();
+    }
+
+    // Part 2 Parallel: Same as part 2 DP, but the rows are counted in parallel.
+    private static long part2_parallel(List<SpringRow> rows) {
+        return countParallel(rows, 5);
+    }
+
+    // Runs part 2 parallel and prints how many rows per second were processed.
+    private static void benchmark_part2_parallel(List<SpringRow> rows) {
+        long startTime = System.nanoTime();
+        long arrangements = countParallel(rows, 5);
+        long elapsed = System.nanoTime() - startTime;
+
+        System.out.printf("%d rows on %d threads, %.0f rows/s (%d arrangements)%n", rows.size(),
+                Runtime.getRuntime().availableProcessors(), rows.size() / (elapsed / 1e9), arrangements);
+    }
+
+    // Returns the sum of the arrangements of every row unfolded into the given number of copies. Every fold from
+    // 1 up to the requested one is computed in the same pass, each building on the counts of the previous one.
+    // Throws an ArithmeticException if a row's count or the sum doesn't fit in a long.
+    private static long sumFolded(List<SpringRow> rows, int folds) {
+        long sum = 0;
+
+        for (SpringRow row : rows) {
+            long arrangements = new FoldedArrangementCounter(row.getRow(), row.getGroupSizes(), folds).countFolds()[folds];
+            if (arrangements == FoldedArrangementCounter.OVERFLOW) {
+                throw new ArithmeticException("Arrangements of " + row.getRow() + " overflow a long");
+            }
+            sum = Math.addExact(sum, arrangements);
+        }
+
+        return sum;
+    }
+
+    // Part 2 Folds: Same as part 2, using the folded arrangement counter.
+    private static long part2_folds(List<SpringRow> rows) {
+        return sumFolded(rows, 5);
+    }
 }
\ No newline at end of file
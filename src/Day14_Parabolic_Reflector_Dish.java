@@ -1,7 +1,253 @@
 import java.io.File;
 import java.io.IOException;
+import java.nio.LongBuffer;
 import java.util.*;
 
+// The board stored as bitsets: one bit per cell, for round rocks and for cube rocks, both by row (bit c of row r
+// is cell (r, c)) and by column (bit r of column c is cell (r, c)). Each row or column is its own run of 64-bit
+// words. Tilting north or south works on the columns and west or east on the rows: the cube rocks split a line
+// into segments, and every round rock in a segment ends up packed against one end of it, so a tilt is a popcount
+// of each segment followed by setting that many bits at the right end. The two views of the round rocks are kept
+// in sync by transposing 64x64 blocks of bits, so a full cycle only ever looks at whole words.
+class RockBoard {
+    private final int height;
+    private final int width;
+    private final int rowWords;
+    private final int colWords;
+    private final long[] roundRows;
+    private final long[] roundCols;
+    private final long[] cubeRows;
+    private final long[] cubeCols;
+    private final long[] block = new long[64];
+
+    // Whether roundRows (true) or roundCols (false) has the current positions of the round rocks.
+    private boolean rowsCurrent = true;
+
+    public RockBoard(char[][] grid) {
+        this.height = grid.length;
+        this.width = grid[0].length;
+        this.rowWords = (width + 63) / 64;
+        this.colWords = (height + 63) / 64;
+        this.roundRows = new long[height * rowWords];
+        this.cubeRows = new long[height * rowWords];
+        this.roundCols = new long[width * colWords];
+        this.cubeCols = new long[width * colWords];
+
+        for (int r = 0; r < height; r++) {
+            for (int c = 0; c < width; c++) {
+                if (grid[r][c] == 'O') {
+                    roundRows[r * rowWords + (c >> 6)] |= 1L << c;
+                } else if (grid[r][c] == '#') {
+                    cubeRows[r * rowWords + (c >> 6)] |= 1L << c;
+                    cubeCols[c * colWords + (r >> 6)] |= 1L << r;
+                }
+            }
+        }
+    }
+
+    public void tiltNorth() {
+        useCols();
+        tilt(roundCols, cubeCols, width, height, colWords, false);
+    }
+
+    public void tiltSouth() {
+        useCols();
+        tilt(roundCols, cubeCols, width, height, colWords, true);
+    }
+
+    public void tiltWest() {
+        useRows();
+        tilt(roundRows, cubeRows, height, width, rowWords, false);
+    }
+
+    public void tiltEast() {
+        useRows();
+        tilt(roundRows, cubeRows, height, width, rowWords, true);
+    }
+
+    // Runs one cycle of tilts: north, west, south, then east.
+    public void cycle() {
+        tiltNorth();
+        tiltWest();
+        tiltSouth();
+        tiltEast();
+    }
+
+    // Returns the total load on the north edge: each round rock counts its distance to the south edge.
+    public int calculateTotalLoadNorth() {
+        useRows();
+        int sum = 0;
+        for (int r = 0; r < height; r++) {
+            int rocks = 0;
+            for (int w = 0; w < rowWords; w++) {
+                rocks += Long.bitCount(roundRows[r * rowWords + w]);
+            }
+            sum += rocks * (height - r);
+        }
+        return sum;
+    }
+
+    // Returns the positions of the round rocks, row by row, as the words of one bitset.
+    public long[] getRoundRocks() {
+        useRows();
+        return roundRows;
+    }
+
+    // Packs the round rocks of every segment of every line against the start of the segment,
+    // or against its end if toEnd is set.
+    private static void tilt(long[] round, long[] cube, int lines, int length, int words, boolean toEnd) {
+        for (int line = 0; line < lines; line++) {
+            int base = line * words * 64;
+            int start = 0;
+            while (start < length) {
+                int end = nextSetBit(cube, base + start, base + length) - base;
+                if (end > start) {
+                    int rocks = countBits(round, base + start, base + end);
+                    setBits(round, base + start, base + end, false);
+                    if (toEnd) {
+                        setBits(round, base + end - rocks, base + end, true);
+                    } else {
+                        setBits(round, base + start, base + start + rocks, true);
+                    }
+                }
+                start = end + 1;
+            }
+        }
+    }
+
+    // Returns the index of the first set bit in [from, to), or to if there isn't one.
+    private static int nextSetBit(long[] bits, int from, int to) {
+        int w = from >> 6;
+        long word = bits[w] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return Math.min(to, (w << 6) + Long.numberOfTrailingZeros(word));
+            }
+            if (++w << 6 >= to) return to;
+            word = bits[w];
+        }
+    }
+
+    // Returns how many bits are set in [from, to).
+    private static int countBits(long[] bits, int from, int to) {
+        int count = 0;
+        while (from < to) {
+            int n = Math.min(64 - (from & 63), to - from);
+            count += Long.bitCount(bits[from >> 6] & mask(from, n));
+            from += n;
+        }
+        return count;
+    }
+
+    // Sets or clears every bit in [from, to).
+    private static void setBits(long[] bits, int from, int to, boolean value) {
+        while (from < to) {
+            int n = Math.min(64 - (from & 63), to - from);
+            if (value) bits[from >> 6] |= mask(from, n);
+            else bits[from >> 6] &= ~mask(from, n);
+            from += n;
+        }
+    }
+
+    // Returns a word with n bits set, starting at bit (from % 64).
+    private static long mask(int from, int n) {
+        return (n == 64 ? -1L : (1L << n) - 1) << from;
+    }
+
+    private void useRows() {
+        if (!rowsCurrent) {
+            transpose(roundCols, width, colWords, roundRows, height, rowWords);
+            rowsCurrent = true;
+        }
+    }
+
+    private void useCols() {
+        if (rowsCurrent) {
+            transpose(roundRows, height, rowWords, roundCols, width, colWords);
+            rowsCurrent = false;
+        }
+    }
+
+    // Transposes a bitset of lines (each `words` words long) into one of `targetLines` lines (each `targetWords`
+    // long), 64x64 bits at a time: word w of lines 64i to 64i + 63 becomes word i of lines 64w to 64w + 63.
+    private void transpose(long[] source, int lines, int words, long[] target, int targetLines, int targetWords) {
+        for (int i = 0; i < targetWords; i++) {
+            for (int w = 0; w < words; w++) {
+                for (int k = 0; k < 64; k++) {
+                    int line = i * 64 + k;
+                    block[k] = line < lines ? source[line * words + w] : 0;
+                }
+                transpose64(block);
+                for (int k = 0; k < 64; k++) {
+                    int line = w * 64 + k;
+                    if (line < targetLines) target[line * targetWords + i] = block[k];
+                }
+            }
+        }
+    }
+
+    // Transposes a 64x64 bit matrix in place (bit j of a[i] swaps with bit i of a[j]) by swapping
+    // 32x32 blocks, then 16x16 blocks inside those, and so on down to single bits.
+    private static void transpose64(long[] a) {
+        long m = 0x00000000FFFFFFFFL;
+        for (int j = 32; j != 0; j >>= 1, m ^= (m << j)) {
+            for (int k = 0; k < 64; k = ((k | j) + 1) & ~j) {
+                long t = ((a[k] >>> j) ^ a[k | j]) & m;
+                a[k | j] ^= t;
+                a[k] ^= t << j;
+            }
+        }
+    }
+}
+
+// Open addressing hash table from 128-bit fingerprints (two longs) to the cycle they were first seen after.
+// Each entry is 20 bytes no matter how big the board is.
+class FingerprintTable {
+    private long[] high = new long[1024];
+    private long[] low = new long[1024];
+    private int[] values = new int[1024];
+    private int size;
+
+    FingerprintTable() {
+        Arrays.fill(values, -1);
+    }
+
+    // Returns the value stored for the fingerprint, or -1 if there isn't one.
+    int get(long h, long l) {
+        int mask = values.length - 1;
+        for (int i = (int) l & mask; values[i] != -1; i = (i + 1) & mask) {
+            if (high[i] == h && low[i] == l) return values[i];
+        }
+        return -1;
+    }
+
+    // Stores a non-negative value for a fingerprint that isn't in the table yet.
+    void put(long h, long l, int value) {
+        if (size * 2 >= values.length) grow();
+        int mask = values.length - 1;
+        int i = (int) l & mask;
+        while (values[i] != -1) i = (i + 1) & mask;
+        high[i] = h;
+        low[i] = l;
+        values[i] = value;
+        size++;
+    }
+
+    private void grow() {
+        long[] oldHigh = high;
+        long[] oldLow = low;
+        int[] oldValues = values;
+        high = new long[oldValues.length * 2];
+        low = new long[oldValues.length * 2];
+        values = new int[oldValues.length * 2];
+        Arrays.fill(values, -1);
+        size = 0;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != -1) put(oldHigh[i], oldLow[i], oldValues[i]);
+        }
+    }
+}
+
 public class Day14_Parabolic_Reflector_Dish {
     public static void main(String[] args) {
         File file = new File("./inputs/day14/day14.txt");
@@ -32,10 +278,10 @@ public class Day14_Parabolic_Reflector_Dish {
                 row++;
             }
 
-            int part1 = part1(grid);
+            int part1 = part1_bits(grid);
             System.out.println("Part 1 is: " + part1);
 
-            int part2 = part2(grid);
+            int part2 = part2_skipper(grid);
             System.out.println("Part 2 is: " + part2);
 
         } catch (IOException exception) {
@@ -276,4 +522,120 @@ public class Day14_Parabolic_Reflector_Dish {
 
         return calculateTotalLoadNorth(grid);
     }
+
+    // Part 1 Bits: Same as part 1, on a bit-packed board.
+    private static int part1_bits(char[][] grid) {
+        RockBoard board = new RockBoard(grid);
+        board.tiltNorth();
+        return board.calculateTotalLoadNorth();
+    }
+
+    // Part 2 Bits: Same as part 2, on a bit-packed board. The round rock words are used as the key instead of a string.
+    private static int part2_bits(char[][] grid) {
+        RockBoard board = new RockBoard(grid);
+        Map<LongBuffer, Integer> store = new HashMap<>();
+
+        int cycles = 0;
+        LongBuffer key = LongBuffer.wrap(board.getRoundRocks().clone());
+        while (!store.containsKey(key)) {
+            store.put(key, cycles);
+            board.cycle();
+            cycles++;
+            key = LongBuffer.wrap(board.getRoundRocks().clone());
+        }
+
+        int cycleLength = cycles - store.get(key);
+        int remainingCycles = (1000000000 - cycles) % cycleLength;
+        for (int i = 0; i < remainingCycles; i++) {
+            board.cycle();
+        }
+
+        return board.calculateTotalLoadNorth();
+    }
+
+    // Finishes a 64-bit hash (the MurmurHash3 finalizer), so that every input bit affects every output bit.
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // Returns a 128-bit fingerprint of the words as two independent 64-bit hashes.
+    private static long[] fingerprint(long[] words) {
+        long h1 = 0x9e3779b97f4a7c15L;
+        long h2 = 0x632be59bd9b4e019L;
+        for (long word : words) {
+            h1 = mix(h1 ^ word) * 31;
+            h2 = mix(h2 + word) ^ (h2 >>> 29);
+        }
+        return new long[] {mix(h1), mix(h2)};
+    }
+
+    // Part 2 Fingerprint: Same as part 2, but each board seen is stored as a 128-bit fingerprint instead of
+    // a string of the whole grid, so the memory per cycle doesn't grow with the board.
+    // Two boards could share a fingerprint, so a repeat is only trusted after checking it: a snapshot of the board
+    // is taken, and if running the supposed cycle length again gets back to exactly the same board, the cycle is real.
+    private static int part2_fingerprint(char[][] grid) {
+        RockBoard board = new RockBoard(grid);
+        FingerprintTable store = new FingerprintTable();
+        int target = 1000000000;
+        int cycles = 0;
+
+        while (cycles < target) {
+            long[] key = fingerprint(board.getRoundRocks());
+            int first = store.get(key[0], key[1]);
+
+            if (first != -1) {
+                int cycleLength = cycles - first;
+                long[] snapshot = board.getRoundRocks().clone();
+
+                int verified = 0;
+                while (verified < cycleLength && cycles < target) {
+                    board.cycle();
+                    cycles++;
+                    verified++;
+                }
+
+                if (verified == cycleLength && Arrays.equals(snapshot, board.getRoundRocks())) {
+                    int remainingCycles = (target - cycles) % cycleLength;
+                    for (int i = 0; i < remainingCycles; i++) {
+                        board.cycle();
+                    }
+                    return board.calculateTotalLoadNorth();
+                }
+
+                // A collision (or the target came first). Carry on from here.
+                continue;
+            }
+
+            store.put(key[0], key[1], cycles);
+            board.cycle();
+            cycles++;
+        }
+
+        return board.calculateTotalLoadNorth();
+    }
+
+    // Returns a 64-bit hash of the words, the same as the first half of fingerprint but without allocating.
+    private static long hash(long[] words) {
+        long h = 0x9e3779b97f4a7c15L;
+        for (long word : words) {
+            h = mix(h ^ word) * 31;
+        }
+        return mix(h);
+    }
+
+    // Part 2 Skipper: Same as part 2, but the cycle is found by the shared cycle skipper, which only keeps one
+    // earlier fingerprint around instead of a table of every board seen. Like part 2 fingerprint, a repeated
+    // hash is only trusted once the board itself matches a snapshot of the earlier one.
+    private static int part2_skipper(char[][] grid) {
+        RockBoard board = new RockBoard(grid);
+        int target = 1000000000;
+
+        CycleSkipper.run(board::cycle, () -> hash(board.getRoundRocks()), () -> board.getRoundRocks().clone(), target);
+        return board.calculateTotalLoadNorth();
+    }
 }
\ No newline at end of file
@@ -1,6 +1,12 @@
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
 import java.awt.Point;
 
 enum BeamDirection {
@@ -21,6 +27,491 @@ record PointDirection(Point p, BeamDirection dir) {
         return Objects.hash(p, dir);
     }
 }
+
+// Traces beams without recursion or per-step allocation. The beams that still have to be followed are kept on an
+// explicit stack of ints (cell * 4 + direction), and which directions each cell has been crossed in is kept as a
+// 4-bit mask per cell (bit i is BeamDirection.values()[i]). Every energized cell also gets a bit in a long[] bitset,
+// so counting energized cells is a popcount over the words. The buffers are reused between traces.
+class BeamTracer {
+    // The steps and mirror tables are shared with BeamSegmentGraph.
+    static final int[] ROW_STEPS = {-1, 1, 0, 0};
+    static final int[] COL_STEPS = {0, 0, -1, 1};
+    static final int UP = BeamDirection.UP.ordinal();
+    static final int DOWN = BeamDirection.DOWN.ordinal();
+    static final int LEFT = BeamDirection.LEFT.ordinal();
+    static final int RIGHT = BeamDirection.RIGHT.ordinal();
+
+    // Direction a beam leaves a '/' or '\' in, indexed by the direction it arrived in.
+    static final int[] SLASH = {RIGHT, LEFT, DOWN, UP};
+    static final int[] BACKSLASH = {LEFT, RIGHT, UP, DOWN};
+
+    private final int height;
+    private final int width;
+    private final char[] tiles;
+    private final byte[] directions;
+    private final long[] energized;
+    private int[] stack = new int[64];
+
+    public BeamTracer(char[][] grid) {
+        this.height = grid.length;
+        this.width = grid[0].length;
+        this.tiles = new char[height * width];
+        for (int row = 0; row < height; row++) {
+            System.arraycopy(grid[row], 0, tiles, row * width, width);
+        }
+        this.directions = new byte[height * width];
+        this.energized = new long[(height * width + 63) / 64];
+    }
+
+    // Shoots a beam into the given point going in the given direction and returns how many cells are energized.
+    public int countEnergized(int row, int col, BeamDirection direction) {
+        trace(row, col, direction);
+
+        int count = 0;
+        for (long word : energized) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    // Returns the bitset of cells energized by the last trace. Bit (row * width + col) is set for each of them.
+    public long[] getEnergized() {
+        return energized;
+    }
+
+    private void trace(int startRow, int startCol, BeamDirection startDirection) {
+        Arrays.fill(directions, (byte) 0);
+        Arrays.fill(energized, 0);
+
+        int size = 0;
+        stack[size++] = (startRow * width + startCol) * 4 + startDirection.ordinal();
+
+        while (size > 0) {
+            int beam = stack[--size];
+            int row = beam / 4 / width;
+            int col = beam / 4 % width;
+            int direction = beam % 4;
+
+            // Follow the beam until it leaves the grid or gets to a cell it has already crossed in this direction.
+            // Splitters push one of the two beams onto the stack and keep following the other.
+            while (row >= 0 && row < height && col >= 0 && col < width) {
+                int cell = row * width + col;
+                if ((directions[cell] & (1 << direction)) != 0)
+                    break;
+                directions[cell] |= (byte) (1 << direction);
+                energized[cell >> 6] |= 1L << cell;
+
+                char tile = tiles[cell];
+                if (tile == '/') {
+                    direction = SLASH[direction];
+                } else if (tile == '\\') {
+                    direction = BACKSLASH[direction];
+                } else if (tile == '|' && (direction == LEFT || direction == RIGHT)) {
+                    size = push(size, row + 1, col, DOWN);
+                    direction = UP;
+                } else if (tile == '-' && (direction == UP || direction == DOWN)) {
+                    size = push(size, row, col + 1, RIGHT);
+                    direction = LEFT;
+                }
+
+                row += ROW_STEPS[direction];
+                col += COL_STEPS[direction];
+            }
+        }
+    }
+
+    // Pushes a beam onto the stack if it's still on the grid and returns the new stack size.
+    private int push(int size, int row, int col, int direction) {
+        if (row < 0 || row >= height || col < 0 || col >= width)
+            return size;
+        if (size == stack.length)
+            stack = Arrays.copyOf(stack, size * 2);
+        stack[size] = (row * width + col) * 4 + direction;
+        return size + 1;
+    }
+}
+
+// The straight-line pieces of every beam path, worked out once for a grid. A segment starts where a beam enters a
+// cell going in some direction (an edge of the grid, or just after an optical element that changed its direction)
+// and runs straight through empty cells and splitters it passes along, until it either leaves the grid or reaches
+// a mirror or splitter that sends it elsewhere. That last cell is the end of the segment and the beams leaving it
+// start the segment's successors. Segments are stored as flat int arrays with the successors in CSR form
+// (the successors of segment i are successors[successorOffsets[i]] up to successors[successorOffsets[i + 1]]).
+// Nothing is modified after construction, so one graph can be shared by any number of threads.
+class BeamSegmentGraph {
+    private final int height;
+    private final int width;
+    private final int[] segmentOfBeam;
+    private final int[] segmentStart;
+    private final int[] segmentLength;
+    private final int[] segmentStep;
+    private final int[] successorOffsets;
+    private final int[] successors;
+
+    public BeamSegmentGraph(char[][] grid) {
+        this.height = grid.length;
+        this.width = grid[0].length;
+        this.segmentOfBeam = new int[height * width * 4];
+        Arrays.fill(segmentOfBeam, -1);
+
+        List<Integer> starts = new ArrayList<>();
+        List<Integer> lengths = new ArrayList<>();
+        List<Integer> steps = new ArrayList<>();
+        List<int[]> next = new ArrayList<>();
+
+        // Build the segments reachable from any edge of the grid, one segment per beam start.
+        Deque<Integer> pending = new ArrayDeque<>();
+        for (int beam : getEdgeBeams()) {
+            pending.push(beam);
+        }
+
+        while (!pending.isEmpty()) {
+            int beam = pending.pop();
+            if (segmentOfBeam[beam] != -1)
+                continue;
+            segmentOfBeam[beam] = starts.size();
+
+            int row = beam / 4 / width;
+            int col = beam / 4 % width;
+            int direction = beam % 4;
+            int length = 0;
+            int[] leaving = new int[0];
+
+            while (row >= 0 && row < height && col >= 0 && col < width) {
+                length++;
+                char tile = grid[row][col];
+                if (tile == '/') {
+                    leaving = new int[] {BeamTracer.SLASH[direction]};
+                } else if (tile == '\\') {
+                    leaving = new int[] {BeamTracer.BACKSLASH[direction]};
+                } else if (tile == '|' && (direction == BeamTracer.LEFT || direction == BeamTracer.RIGHT)) {
+                    leaving = new int[] {BeamTracer.UP, BeamTracer.DOWN};
+                } else if (tile == '-' && (direction == BeamTracer.UP || direction == BeamTracer.DOWN)) {
+                    leaving = new int[] {BeamTracer.LEFT, BeamTracer.RIGHT};
+                }
+                if (leaving.length > 0)
+                    break;
+
+                row += BeamTracer.ROW_STEPS[direction];
+                col += BeamTracer.COL_STEPS[direction];
+            }
+
+            starts.add(beam / 4);
+            lengths.add(length);
+            steps.add(BeamTracer.ROW_STEPS[direction] * width + BeamTracer.COL_STEPS[direction]);
+
+            List<Integer> nextBeams = new ArrayList<>();
+            for (int newDirection : leaving) {
+                int newRow = row + BeamTracer.ROW_STEPS[newDirection];
+                int newCol = col + BeamTracer.COL_STEPS[newDirection];
+                if (newRow >= 0 && newRow < height && newCol >= 0 && newCol < width) {
+                    int nextBeam = (newRow * width + newCol) * 4 + newDirection;
+                    nextBeams.add(nextBeam);
+                    pending.push(nextBeam);
+                }
+            }
+            next.add(nextBeams.stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        int segments = starts.size();
+        this.segmentStart = starts.stream().mapToInt(Integer::intValue).toArray();
+        this.segmentLength = lengths.stream().mapToInt(Integer::intValue).toArray();
+        this.segmentStep = steps.stream().mapToInt(Integer::intValue).toArray();
+
+        // The successors are stored by beam until every segment has an id, then translated to segment ids.
+        this.successorOffsets = new int[segments + 1];
+        for (int i = 0; i < segments; i++) {
+            successorOffsets[i + 1] = successorOffsets[i] + next.get(i).length;
+        }
+        this.successors = new int[successorOffsets[segments]];
+        for (int i = 0; i < segments; i++) {
+            int[] nextBeams = next.get(i);
+            for (int j = 0; j < nextBeams.length; j++) {
+                successors[successorOffsets[i] + j] = segmentOfBeam[nextBeams[j]];
+            }
+        }
+    }
+
+    public int getHeight() { return this.height; }
+    public int getWidth() { return this.width; }
+    public int getSegmentCount() { return this.segmentStart.length; }
+    public int getSegmentOfBeam(int beam) { return this.segmentOfBeam[beam]; }
+    public int getSuccessorOffset(int segment) { return this.successorOffsets[segment]; }
+    public int getSuccessor(int index) { return this.successors[index]; }
+
+    // Returns every beam that enters the grid from one of its edges, as cell * 4 + direction.
+    public int[] getEdgeBeams() {
+        int[] beams = new int[2 * (width + height)];
+        int i = 0;
+        for (int col = 0; col < width; col++) {
+            beams[i++] = col * 4 + BeamTracer.DOWN;
+            beams[i++] = ((height - 1) * width + col) * 4 + BeamTracer.UP;
+        }
+        for (int row = 0; row < height; row++) {
+            beams[i++] = (row * width) * 4 + BeamTracer.RIGHT;
+            beams[i++] = (row * width + width - 1) * 4 + BeamTracer.LEFT;
+        }
+        return beams;
+    }
+
+    // Counts the cells energized by the beam (cell * 4 + direction) entering from an edge, by walking segments
+    // instead of cells. The caller provides the scratch buffers so that a thread can reuse them between calls.
+    public int countEnergized(int beam, BeamSegmentScratch scratch) {
+        long[] energized = scratch.energized;
+        long[] seen = scratch.seen;
+        Arrays.fill(energized, 0);
+        Arrays.fill(seen, 0);
+
+        int size = 0;
+        scratch.stack[size++] = segmentOfBeam[beam];
+
+        while (size > 0) {
+            int segment = scratch.stack[--size];
+            if ((seen[segment >> 6] & (1L << segment)) != 0)
+                continue;
+            seen[segment >> 6] |= 1L << segment;
+
+            markSegment(segment, energized);
+
+            for (int i = successorOffsets[segment]; i < successorOffsets[segment + 1]; i++) {
+                if (size == scratch.stack.length)
+                    scratch.stack = Arrays.copyOf(scratch.stack, size * 2);
+                scratch.stack[size++] = successors[i];
+            }
+        }
+
+        int count = 0;
+        for (long word : energized) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    // Sets the bits of every cell in the segment. Segments going left or right cover a run of consecutive bits,
+    // so they are set a word at a time.
+    public void markSegment(int segment, long[] energized) {
+        markSegment(segment, energized, null);
+    }
+
+    // Same as markSegment, but also passes the index of every word that was zero before to newWords (if not null).
+    public void markSegment(int segment, long[] energized, IntConsumer newWords) {
+        int start = segmentStart[segment];
+        int length = segmentLength[segment];
+        int step = segmentStep[segment];
+
+        if (step == 1 || step == -1) {
+            int from = step == 1 ? start : start - length + 1;
+            int to = from + length; // exclusive
+            while (from < to) {
+                int bits = Math.min(64 - (from & 63), to - from);
+                long mask = bits == 64 ? -1L : ((1L << bits) - 1) << from;
+                setBits(energized, from >> 6, mask, newWords);
+                from += bits;
+            }
+        } else {
+            for (int i = 0, cell = start; i < length; i++, cell += step) {
+                setBits(energized, cell >> 6, 1L << cell, newWords);
+            }
+        }
+    }
+
+    private static void setBits(long[] bits, int wordIndex, long mask, IntConsumer newWords) {
+        if (newWords != null && bits[wordIndex] == 0)
+            newWords.accept(wordIndex);
+        bits[wordIndex] |= mask;
+    }
+}
+
+// Per-thread buffers for walking a BeamSegmentGraph: a bit per cell for the energized cells,
+// a bit per segment for the segments already walked, and a stack of segments still to walk.
+class BeamSegmentScratch {
+    final long[] energized;
+    final long[] seen;
+    int[] stack = new int[64];
+
+    BeamSegmentScratch(BeamSegmentGraph graph) {
+        this.energized = new long[(graph.getHeight() * graph.getWidth() + 63) / 64];
+        this.seen = new long[(graph.getSegmentCount() + 63) / 64];
+    }
+}
+
+// A set of cells stored as only the non-zero 64-bit words of a bitset, in order of word index.
+// Beam paths usually cover a small part of a large grid, so this is much smaller than a full bitset.
+record SparseCellSet(int[] wordIndices, long[] words, int cardinality) { }
+
+// Answers "how many cells does this edge beam energize" for every edge beam in one pass over the segment graph.
+// A beam energizes everything reachable from its first segment. Segments that can reach each other (beams that
+// loop around through splitters) form strongly connected components, found with Tarjan's algorithm, and they all
+// energize exactly the same cells. Tarjan's algorithm finishes a component only after every component it can
+// reach, so the cells reachable from each component can be built from its own segments plus the already built
+// sets of the components it leads to. Each set is built once, stored as a SparseCellSet and reused by every
+// component that leads to it. Only its size is kept for good: every component counts how many edges still lead
+// into it from components that haven't been built, and its set is dropped once that reaches zero. So only the
+// sets still waiting for a component that leads to them are held at any time, not one for every component.
+class BeamReachability {
+    private final BeamSegmentGraph graph;
+    private final int[] componentOfSegment;
+    private final List<SparseCellSet> reachable = new ArrayList<>();
+    private final int[] cardinalities;
+    private final int[] pendingEdges;
+    private final int[] inDegrees;
+
+    // Scratch space for building sets: a full bitset, plus which of its words are currently non-zero.
+    private final long[] dense;
+    private int[] touched = new int[64];
+    private int touchedCount;
+
+    public BeamReachability(BeamSegmentGraph graph) {
+        this.graph = graph;
+        int segments = graph.getSegmentCount();
+        this.componentOfSegment = new int[segments];
+        Arrays.fill(componentOfSegment, -1);
+        this.cardinalities = new int[segments];
+        this.pendingEdges = new int[segments];
+        this.inDegrees = new int[segments];
+        for (int e = 0; e < graph.getSuccessorOffset(segments); e++) {
+            inDegrees[graph.getSuccessor(e)]++;
+        }
+        this.dense = new long[(graph.getHeight() * graph.getWidth() + 63) / 64];
+
+        findComponents(segments);
+    }
+
+    // Returns how many cells the beam (cell * 4 + direction) entering from an edge energizes.
+    public int countEnergized(int beam) {
+        return cardinalities[componentOfSegment[graph.getSegmentOfBeam(beam)]];
+    }
+
+    // Iterative version of Tarjan's algorithm. callStack holds the segments being visited and edgePosition how far
+    // through its successors each of them has got, which replaces the recursion.
+    private void findComponents(int segments) {
+        int[] order = new int[segments];
+        int[] low = new int[segments];
+        Arrays.fill(order, -1);
+        boolean[] onStack = new boolean[segments];
+        int[] stack = new int[segments];
+        int stackSize = 0;
+        int[] callStack = new int[segments];
+        int[] edgePosition = new int[segments];
+        int counter = 0;
+
+        for (int root = 0; root < segments; root++) {
+            if (order[root] != -1)
+                continue;
+
+            int depth = 0;
+            callStack[depth] = root;
+            edgePosition[depth] = graph.getSuccessorOffset(root);
+            order[root] = low[root] = counter++;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+
+            while (depth >= 0) {
+                int segment = callStack[depth];
+
+                if (edgePosition[depth] < graph.getSuccessorOffset(segment + 1)) {
+                    int next = graph.getSuccessor(edgePosition[depth]++);
+                    if (order[next] == -1) {
+                        depth++;
+                        callStack[depth] = next;
+                        edgePosition[depth] = graph.getSuccessorOffset(next);
+                        order[next] = low[next] = counter++;
+                        stack[stackSize++] = next;
+                        onStack[next] = true;
+                    } else if (onStack[next]) {
+                        low[segment] = Math.min(low[segment], order[next]);
+                    }
+                    continue;
+                }
+
+                // All successors are done. If this segment is the root of a component, pop the component.
+                if (low[segment] == order[segment]) {
+                    int component = reachable.size();
+                    int start = stackSize;
+                    do {
+                        start--;
+                        onStack[stack[start]] = false;
+                        componentOfSegment[stack[start]] = component;
+                    } while (stack[start] != segment);
+
+                    // Every component that leads here is built later, so all the edges into it from outside
+                    // are still pending.
+                    int pending = 0;
+                    for (int i = start; i < stackSize; i++) {
+                        int member = stack[i];
+                        pending += inDegrees[member];
+                        for (int e = graph.getSuccessorOffset(member); e < graph.getSuccessorOffset(member + 1); e++) {
+                            if (componentOfSegment[graph.getSuccessor(e)] == component)
+                                pending--;
+                        }
+                    }
+                    pendingEdges[component] = pending;
+
+                    SparseCellSet set = buildReachable(stack, start, stackSize, component);
+                    cardinalities[component] = set.cardinality();
+                    reachable.add(pending == 0 ? null : set);
+                    stackSize = start;
+                }
+
+                depth--;
+                if (depth >= 0) {
+                    int parent = callStack[depth];
+                    low[parent] = Math.min(low[parent], low[segment]);
+                }
+            }
+        }
+    }
+
+    // Builds the cells reachable from the component made of stack[start] to stack[end - 1]:
+    // its own segments' cells plus the sets of every other component its segments lead to.
+    // The sets of those components are dropped once nothing else needs them.
+    // Whenever a word of the dense bitset becomes non-zero its index is noted, so that turning the result
+    // into a SparseCellSet (and clearing the dense bitset again) only looks at the words that were used.
+    private SparseCellSet buildReachable(int[] stack, int start, int end, int component) {
+        touchedCount = 0;
+
+        for (int i = start; i < end; i++) {
+            int segment = stack[i];
+            graph.markSegment(segment, dense, this::touch);
+
+            for (int e = graph.getSuccessorOffset(segment); e < graph.getSuccessorOffset(segment + 1); e++) {
+                int nextComponent = componentOfSegment[graph.getSuccessor(e)];
+                if (nextComponent == component)
+                    continue;
+
+                SparseCellSet next = reachable.get(nextComponent);
+                for (int w = 0; w < next.wordIndices().length; w++) {
+                    int wordIndex = next.wordIndices()[w];
+                    if (dense[wordIndex] == 0)
+                        touch(wordIndex);
+                    dense[wordIndex] |= next.words()[w];
+                }
+
+                if (--pendingEdges[nextComponent] == 0)
+                    reachable.set(nextComponent, null);
+            }
+        }
+
+        int[] wordIndices = Arrays.copyOf(touched, touchedCount);
+        Arrays.sort(wordIndices);
+        long[] words = new long[touchedCount];
+        int cardinality = 0;
+        for (int i = 0; i < touchedCount; i++) {
+            words[i] = dense[wordIndices[i]];
+            cardinality += Long.bitCount(words[i]);
+            dense[wordIndices[i]] = 0;
+        }
+
+        return new SparseCellSet(wordIndices, words, cardinality);
+    }
+
+    private void touch(int wordIndex) {
+        if (touchedCount == touched.length)
+            touched = Arrays.copyOf(touched, touchedCount * 2);
+        touched[touchedCount++] = wordIndex;
+    }
+}
+
 public class Day16_Floor_Will_Be_Lava {
     public static void main(String[] args) {
         File file = new File("./inputs/day16/day16.txt");
@@ -52,10 +543,10 @@ public class Day16_Floor_Will_Be_Lava {
                 row++;
             }
 
-            int part1 = part1(grid);
+            int part1 = part1_tracer(grid);
             System.out.println("Part 1 is: " + part1);
 
-            int part2 = part2(grid);
+            int part2 = part2_components(grid);
             System.out.println("Part 2 is: " + part2);
 
         } catch (IOException exception) {
@@ -228,4 +719,79 @@ public class Day16_Floor_Will_Be_Lava {
 
         return max;
     }
+
+    // Part 1 Tracer: Same as part 1, using the iterative beam tracer.
+    private static int part1_tracer(char[][] grid) {
+        return new BeamTracer(grid).countEnergized(0, 0, BeamDirection.RIGHT);
+    }
+
+    // Part 2 Tracer: Same as part 2, using one iterative beam tracer for every starting point.
+    private static int part2_tracer(char[][] grid) {
+        BeamTracer tracer = new BeamTracer(grid);
+        int max = 0;
+
+        for (int j = 0; j < grid[0].length; j++) {
+            max = Math.max(max, tracer.countEnergized(0, j, BeamDirection.DOWN));
+            max = Math.max(max, tracer.countEnergized(grid.length - 1, j, BeamDirection.UP));
+        }
+
+        for (int i = 0; i < grid.length; i++) {
+            max = Math.max(max, tracer.countEnergized(i, 0, BeamDirection.RIGHT));
+            max = Math.max(max, tracer.countEnergized(i, grid[0].length - 1, BeamDirection.LEFT));
+        }
+
+        return max;
+    }
+
+    // Part 2 Segments: Same as part 2, but the beam segments are worked out once up front and the edge beams are
+    // spread across one worker thread per core. Each worker takes the next unclaimed edge beam and keeps its own
+    // scratch buffers; the segment graph itself is only read, so it's shared by all of them.
+    private static int part2_segments(char[][] grid) {
+        BeamSegmentGraph graph = new BeamSegmentGraph(grid);
+        int[] edgeBeams = graph.getEdgeBeams();
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        AtomicInteger nextBeam = new AtomicInteger();
+        int max = 0;
+
+        try {
+            List<Future<Integer>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                workers.add(executor.submit(() -> {
+                    BeamSegmentScratch scratch = new BeamSegmentScratch(graph);
+                    int workerMax = 0;
+                    int i;
+                    while ((i = nextBeam.getAndIncrement()) < edgeBeams.length) {
+                        workerMax = Math.max(workerMax, graph.countEnergized(edgeBeams[i], scratch));
+                    }
+                    return workerMax;
+                }));
+            }
+
+            for (Future<Integer> worker : workers) {
+                max = Math.max(max, worker.get());
+            }
+        } catch (InterruptedException | ExecutionException exception) {
+            throw new RuntimeException(exception);
+        } finally {
+            executor.shutdown();
+        }
+
+        return max;
+    }
+
+    // Part 2 Components: Same as part 2, but the cells reachable from every edge beam are worked out together
+    // on the condensed segment graph, so each edge beam is just a lookup.
+    private static int part2_components(char[][] grid) {
+        BeamSegmentGraph graph = new BeamSegmentGraph(grid);
+        BeamReachability reachability = new BeamReachability(graph);
+        int max = 0;
+
+        for (int beam : graph.getEdgeBeams()) {
+            max = Math.max(max, reachability.countEnergized(beam));
+        }
+
+        return max;
+    }
 }
\ No newline at end of file
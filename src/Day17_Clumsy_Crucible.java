@@ -2,6 +2,8 @@ import java.awt.*;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.List;
+import java.util.stream.IntStream;
 
 enum CrucibleDirection{
     UP, DOWN, LEFT, RIGHT;
@@ -41,6 +43,181 @@ record CrucibleState(int heatLoss, Point point, CrucibleDirection direction, int
     }
 }
 
+// Result of a crucible search: the minimum heat loss and the number of states that were expanded to find it.
+record CrucibleResult(int heatLoss, int expanded) { }
+
+// A routing query: the cheapest way for a crucible to get from the source block to the target block when it
+// has to move at least minBeforeTurning and at most maxStraight blocks before turning.
+record CrucibleQuery(int sourceRow, int sourceCol, int targetRow, int targetCol, int minBeforeTurning, int maxStraight) { }
+
+// Per-thread buffers for CrucibleRouter searches. Instead of clearing the arrays between searches, every search
+// gets a new generation number and an entry only counts if its stamp matches the current generation.
+// Once a state is finished its distance is stored with the sign bit set, so one stamp array covers both seen and
+// finished states. That's two ints for each of the 2 * height * width states, so 16 bytes per block per thread
+// (64 MB per thread on a 2000 x 2000 grid), plus the buckets.
+class CrucibleSearchScratch {
+    int[] dist;
+    int[] seenGeneration;
+    int[][] buckets = new int[0][];
+    int[] bucketSizes = new int[0];
+    int generation;
+
+    CrucibleSearchScratch(int states) {
+        this.dist = new int[states];
+        this.seenGeneration = new int[states];
+    }
+
+    // Starts a new search that needs the given number of buckets.
+    void reset(int bucketCount) {
+        generation++;
+        if (buckets.length < bucketCount) {
+            int oldCount = buckets.length;
+            buckets = Arrays.copyOf(buckets, bucketCount);
+            bucketSizes = Arrays.copyOf(bucketSizes, bucketCount);
+            for (int i = oldCount; i < bucketCount; i++) {
+                buckets[i] = new int[16];
+            }
+        }
+        Arrays.fill(bucketSizes, 0);
+    }
+}
+
+// Loads a heat map once and answers any number of crucible routing queries on it, from any number of threads.
+// The search is the same run-based bucket queue search as Day17_Clumsy_Crucible.searchBuckets, guided by
+// (minimum heat loss of any block) * (Manhattan distance to the target), which never overestimates and costs
+// nothing to compute. Each thread keeps its own CrucibleSearchScratch, so queries don't allocate.
+class CrucibleRouter {
+    private final int height;
+    private final int width;
+    private final int[] heat;
+    private final int minHeat;
+    private final int maxHeat;
+    private final ThreadLocal<CrucibleSearchScratch> scratch;
+
+    public CrucibleRouter(int[][] grid) {
+        this.height = grid.length;
+        this.width = grid[0].length;
+        this.heat = new int[height * width];
+
+        int min = Integer.MAX_VALUE;
+        int max = 1;
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                heat[row * width + col] = grid[row][col];
+                min = Math.min(min, grid[row][col]);
+                max = Math.max(max, grid[row][col]);
+            }
+        }
+        this.minHeat = min;
+        this.maxHeat = max;
+        this.scratch = ThreadLocal.withInitial(() -> new CrucibleSearchScratch(height * width * 2));
+    }
+
+    // Answers all the queries in parallel. Element i of the result is the answer to query i.
+    public int[] routeAll(List<CrucibleQuery> queries) {
+        int[] results = new int[queries.size()];
+        IntStream.range(0, queries.size()).parallel().forEach(i -> results[i] = route(queries.get(i)));
+        return results;
+    }
+
+    // Returns the minimum heat loss for the query, or -1 if the target can't be reached.
+    public int route(CrucibleQuery query) {
+        if (!isInBounds(query.sourceRow(), query.sourceCol()) || !isInBounds(query.targetRow(), query.targetCol())) {
+            throw new IllegalArgumentException("Query is outside of the grid: " + query);
+        }
+
+        int minRun = Math.max(query.minBeforeTurning(), 1);
+        int maxStraight = query.maxStraight();
+        int source = query.sourceRow() * width + query.sourceCol();
+        int target = query.targetRow() * width + query.targetCol();
+        if (source == target)
+            return 0;
+
+        // A run of k blocks costs at most maxHeat * k and changes the estimate by at most minHeat * k.
+        int bucketCount = (maxHeat + minHeat) * maxStraight + 1;
+        CrucibleSearchScratch s = scratch.get();
+        s.reset(bucketCount);
+        int generation = s.generation;
+
+        // From the source we can set off along either axis.
+        int startPriority = estimate(source, target);
+        for (int axis = 0; axis < 2; axis++) {
+            int state = source * 2 + axis;
+            s.dist[state] = 0;
+            s.seenGeneration[state] = generation;
+            push(s, startPriority % bucketCount, state);
+        }
+        int queued = 2;
+
+        for (int priority = startPriority; queued > 0; priority++) {
+            int bucket = priority % bucketCount;
+
+            while (s.bucketSizes[bucket] > 0) {
+                int state = s.buckets[bucket][--s.bucketSizes[bucket]];
+                queued--;
+
+                if (s.dist[state] < 0)
+                    continue;
+                s.dist[state] |= Integer.MIN_VALUE;
+
+                int cell = state >> 1;
+                int axis = state & 1;
+                int heatLoss = s.dist[state] & Integer.MAX_VALUE;
+
+                if (cell == target) {
+                    return heatLoss;
+                }
+
+                int rowStep = axis == 0 ? 1 : 0;
+                int colStep = axis == 0 ? 0 : 1;
+                for (int sign = -1; sign <= 1; sign += 2) {
+                    int row = cell / width;
+                    int col = cell % width;
+                    int newLoss = heatLoss;
+
+                    for (int steps = 1; steps <= maxStraight; steps++) {
+                        row += sign * rowStep;
+                        col += sign * colStep;
+                        if (!isInBounds(row, col))
+                            break;
+
+                        int nextCell = row * width + col;
+                        newLoss += heat[nextCell];
+                        if (steps < minRun)
+                            continue;
+
+                        int next = nextCell * 2 + (1 - axis);
+                        // A finished state has a negative distance, so it's never lowered again.
+                        if (s.seenGeneration[next] != generation || newLoss < s.dist[next]) {
+                            s.dist[next] = newLoss;
+                            s.seenGeneration[next] = generation;
+                            push(s, (newLoss + estimate(nextCell, target)) % bucketCount, next);
+                            queued++;
+                        }
+                    }
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    private boolean isInBounds(int row, int col) {
+        return row >= 0 && row < height && col >= 0 && col < width;
+    }
+
+    private int estimate(int cell, int target) {
+        return minHeat * (Math.abs(cell / width - target / width) + Math.abs(cell % width - target % width));
+    }
+
+    private static void push(CrucibleSearchScratch s, int bucket, int state) {
+        if (s.bucketSizes[bucket] == s.buckets[bucket].length) {
+            s.buckets[bucket] = Arrays.copyOf(s.buckets[bucket], s.bucketSizes[bucket] * 2);
+        }
+        s.buckets[bucket][s.bucketSizes[bucket]++] = state;
+    }
+}
+
 public class Day17_Clumsy_Crucible {
     static int[][] grid;
 
@@ -79,10 +256,10 @@ public class Day17_Clumsy_Crucible {
                 row++;
             }
 
-            int part1 = part1();
+            int part1 = part1_buckets();
             System.out.println("Part 1 is: " + part1);
 
-            int part2 = part2();
+            int part2 = part2_buckets();
             System.out.println("Part 2 is: " + part2);
 
         } catch (IOException exception) {
@@ -219,4 +396,227 @@ public class Day17_Clumsy_Crucible {
     private static int part2() {
         return findCrucibleHeatLoss(4, 10);
     }
+
+    // Same search as findCrucibleHeatLoss but without allocating anything per step, so it can handle much larger grids.
+    // Two things change:
+    // 1. Instead of moving one block at a time and counting steps, each move goes straight for a whole run of
+    //    minBeforeTurning..maxStraight blocks and then has to turn. A state is then just a block and whether the
+    //    next run goes up/down or left/right, encoded as one int: (row * width + column) * 2 + axis.
+    //    Keeping the step count in the state would need 4 * (maxStraight + 1) ints per block instead of 2.
+    // 2. Heat loss per block is at most 9, so one run costs at most 9 * maxStraight. Rather than a priority queue,
+    //    states are kept in a ring of buckets indexed by heat loss (Dial's algorithm) and the buckets are emptied
+    //    in order. Distances live in a flat int array and finished states in a BitSet.
+    private static int findCrucibleHeatLossBuckets(int minBeforeTurning, int maxStraight) {
+        return searchBuckets(minBeforeTurning, maxStraight, false).heatLoss();
+    }
+
+    // A* version of findCrucibleHeatLossBuckets. States are ordered by heat loss so far plus a lower bound on
+    // the heat loss still to come: the cheapest way from each block to the bottom right if the crucible could
+    // turn whenever it wanted. That bound never overestimates, so the first time we finish a state at the
+    // bottom right it's still the minimum, but states heading away from the goal get put off until much later.
+    private static CrucibleResult findCrucibleHeatLossAStar(int minBeforeTurning, int maxStraight) {
+        return searchBuckets(minBeforeTurning, maxStraight, true);
+    }
+
+    // Returns the cheapest heat loss from every block to the bottom right block, moving freely one block at a
+    // time (entering a block costs its heat loss). Blocks that can't reach it get Integer.MAX_VALUE.
+    // This is Dijkstra's algorithm run backwards from the bottom right, again with a ring of buckets.
+    private static int[] findFreeHeatLossToTerminal(int[] heat, int height, int width, int maxHeat) {
+        int[] dist = new int[height * width];
+        Arrays.fill(dist, Integer.MAX_VALUE);
+        BitSet visited = new BitSet(dist.length);
+
+        int bucketCount = maxHeat + 1;
+        int[][] buckets = new int[bucketCount][16];
+        int[] bucketSizes = new int[bucketCount];
+
+        int terminal = height * width - 1;
+        dist[terminal] = 0;
+        buckets[0][bucketSizes[0]++] = terminal;
+        int queued = 1;
+
+        int[] rowSteps = {-1, 1, 0, 0};
+        int[] colSteps = {0, 0, -1, 1};
+
+        for (int heatLoss = 0; queued > 0; heatLoss++) {
+            int bucket = heatLoss % bucketCount;
+
+            while (bucketSizes[bucket] > 0) {
+                int cell = buckets[bucket][--bucketSizes[bucket]];
+                queued--;
+
+                if (visited.get(cell))
+                    continue;
+                visited.set(cell);
+
+                // Moving from a neighbour into this block costs this block's heat loss.
+                int newLoss = heatLoss + heat[cell];
+                for (int d = 0; d < 4; d++) {
+                    int row = cell / width + rowSteps[d];
+                    int col = cell % width + colSteps[d];
+                    if (row < 0 || row >= height || col < 0 || col >= width)
+                        continue;
+
+                    int next = row * width + col;
+                    if (newLoss < dist[next]) {
+                        dist[next] = newLoss;
+                        int nextBucket = newLoss % bucketCount;
+                        if (bucketSizes[nextBucket] == buckets[nextBucket].length) {
+                            buckets[nextBucket] = Arrays.copyOf(buckets[nextBucket], bucketSizes[nextBucket] * 2);
+                        }
+                        buckets[nextBucket][bucketSizes[nextBucket]++] = next;
+                        queued++;
+                    }
+                }
+            }
+        }
+
+        return dist;
+    }
+
+    // Shared by the bucket queue searches. Buckets are indexed by the state's priority, which is its heat loss,
+    // plus the lower bound from findFreeHeatLossToTerminal when useHeuristic is set. The bound changes by at most
+    // the heat loss of a run between two blocks, so a run can raise the priority by at most twice the cost of the run,
+    // and that's how many buckets the ring needs. Returns the heat loss and how many states were expanded.
+    private static CrucibleResult searchBuckets(int minBeforeTurning, int maxStraight, boolean useHeuristic) {
+        int height = grid.length;
+        int width = grid[0].length;
+        int minRun = Math.max(minBeforeTurning, 1);
+
+        int[] heat = new int[height * width];
+        int maxHeat = 1;
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                heat[row * width + col] = grid[row][col];
+                maxHeat = Math.max(maxHeat, grid[row][col]);
+            }
+        }
+
+        int[] estimate = useHeuristic ? findFreeHeatLossToTerminal(heat, height, width, maxHeat) : new int[height * width];
+
+        int[] dist = new int[height * width * 2];
+        Arrays.fill(dist, Integer.MAX_VALUE);
+        BitSet visited = new BitSet(dist.length);
+
+        int bucketCount = (useHeuristic ? 2 : 1) * maxHeat * maxStraight + 1;
+        int[][] buckets = new int[bucketCount][16];
+        int[] bucketSizes = new int[bucketCount];
+
+        // We start in the top left and can go either down (axis 0) or right (axis 1).
+        dist[0] = 0;
+        dist[1] = 0;
+        int startPriority = estimate[0];
+        if (startPriority == Integer.MAX_VALUE)
+            return new CrucibleResult(0, 0);
+        buckets[startPriority % bucketCount][bucketSizes[startPriority % bucketCount]++] = 0;
+        buckets[startPriority % bucketCount][bucketSizes[startPriority % bucketCount]++] = 1;
+        int queued = 2;
+        int expanded = 0;
+        int terminal = height * width - 1;
+
+        for (int priority = startPriority; queued > 0; priority++) {
+            int bucket = priority % bucketCount;
+
+            while (bucketSizes[bucket] > 0) {
+                int state = buckets[bucket][--bucketSizes[bucket]];
+                queued--;
+
+                if (visited.get(state))
+                    continue;
+                visited.set(state);
+                expanded++;
+
+                int cell = state >> 1;
+                int axis = state & 1;
+                int heatLoss = dist[state];
+
+                // Terminate once we've reached the bottom right block. Every run is long enough to stop after.
+                if (cell == terminal) {
+                    return new CrucibleResult(heatLoss, expanded);
+                }
+
+                // Axis 0 runs up or down, axis 1 runs left or right. Either way, the next run is on the other axis.
+                int rowStep = axis == 0 ? 1 : 0;
+                int colStep = axis == 0 ? 0 : 1;
+                for (int sign = -1; sign <= 1; sign += 2) {
+                    int row = cell / width;
+                    int col = cell % width;
+                    int newLoss = heatLoss;
+
+                    for (int steps = 1; steps <= maxStraight; steps++) {
+                        row += sign * rowStep;
+                        col += sign * colStep;
+                        if (row < 0 || row >= height || col < 0 || col >= width)
+                            break;
+
+                        int nextCell = row * width + col;
+                        newLoss += heat[nextCell];
+                        if (steps < minRun || estimate[nextCell] == Integer.MAX_VALUE)
+                            continue;
+
+                        int next = nextCell * 2 + (1 - axis);
+                        if (newLoss < dist[next]) {
+                            dist[next] = newLoss;
+                            int nextBucket = (newLoss + estimate[nextCell]) % bucketCount;
+                            if (bucketSizes[nextBucket] == buckets[nextBucket].length) {
+                                buckets[nextBucket] = Arrays.copyOf(buckets[nextBucket], bucketSizes[nextBucket] * 2);
+                            }
+                            buckets[nextBucket][bucketSizes[nextBucket]++] = next;
+                            queued++;
+                        }
+                    }
+                }
+            }
+        }
+
+        return new CrucibleResult(0, expanded);
+    }
+
+    // Part 1 Buckets: Same as part 1, using the bucket queue search.
+    private static int part1_buckets() {
+        return findCrucibleHeatLossBuckets(0, 3);
+    }
+
+    // Part 2 Buckets: Same as part 2, using the bucket queue search.
+    private static int part2_buckets() {
+        return findCrucibleHeatLossBuckets(4, 10);
+    }
+
+    // Runs the A* search and the plain bucket search and prints how many states each expanded and how long
+    // each took. Not part of the solution, just for comparing the two.
+    private static void benchmarkAStar(int minBeforeTurning, int maxStraight) {
+        long startTime = System.nanoTime();
+        CrucibleResult aStar = findCrucibleHeatLossAStar(minBeforeTurning, maxStraight);
+        long aStarTime = System.nanoTime() - startTime;
+
+        startTime = System.nanoTime();
+        CrucibleResult dijkstra = searchBuckets(minBeforeTurning, maxStraight, false);
+        long dijkstraTime = System.nanoTime() - startTime;
+
+        System.out.printf("(%d, %d): A* expanded %d states in %d ms, Dijkstra expanded %d states in %d ms%n",
+                minBeforeTurning, maxStraight, aStar.expanded(), aStarTime / 1_000_000,
+                dijkstra.expanded(), dijkstraTime / 1_000_000);
+    }
+
+    // Part 1 A*: Same as part 1, using the A* search.
+    private static int part1_astar() {
+        return findCrucibleHeatLossAStar(0, 3).heatLoss();
+    }
+
+    // Part 2 A*: Same as part 2, using the A* search.
+    private static int part2_astar() {
+        return findCrucibleHeatLossAStar(4, 10).heatLoss();
+    }
+
+    // Part 1 Router: Same as part 1, asked as a query of the crucible router.
+    private static int part1_router() {
+        CrucibleRouter router = new CrucibleRouter(grid);
+        return router.route(new CrucibleQuery(0, 0, grid.length - 1, grid[0].length - 1, 0, 3));
+    }
+
+    // Part 2 Router: Same as part 2, asked as a query of the crucible router.
+    private static int part2_router() {
+        CrucibleRouter router = new CrucibleRouter(grid);
+        return router.route(new CrucibleQuery(0, 0, grid.length - 1, grid[0].length - 1, 4, 10));
+    }
 }
\ No newline at end of file
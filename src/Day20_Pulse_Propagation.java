@@ -1,6 +1,13 @@
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.stream.IntStream;
 
 
 enum Pulse { LOW, HIGH }
@@ -102,7 +109,574 @@ class PulseState {
     public String toString() { return "(" + module + ", " + pulse + ", " + pulseSender + ")"; }
 }
 
+// The module network compiled down to ints so that a button press allocates nothing and hashes nothing.
+// Every module (including ones like rx that are only ever sent to) gets a dense id, and every connection
+// between two modules gets an edge id; the edges leaving module m are edgeOffsets[m] up to edgeOffsets[m + 1]
+// and edgeTarget[e] is where edge e goes. A pulse in flight is packed into one int, edge * 2 + (1 if high),
+// since the edge tells us both the sender and the receiver. Flip-flops keep one bit each, and a conjunction keeps
+// one bit per incoming edge plus a count of how many of those are high, so it knows whether they're all high
+// without looking at them. The pulse queue is a ring buffer of packed ints that is reused between presses.
+class CompiledPulseNetwork {
+    static final byte SINK = 0;
+    static final byte FLIP_FLOP = 1;
+    static final byte CONJUNCTION = 2;
+    static final byte BROADCASTER = 3;
+
+    private final String[] names;
+    private final byte[] types;
+    private final int[] edgeOffsets;
+    private final int[] edgeSource;
+    private final int[] edgeTarget;
+    private final int[] inputCounts;
+    private final int buttonEdge;
+
+    private final long[] flipFlopOn;
+    private final long[] edgeHigh;
+    private final int[] highInputs;
+    private int[] queue = new int[64];
+
+    // Modules being watched, and which of them sent a high pulse or received a low pulse during the last press.
+    private final long[] watched;
+    private final long[] sentHigh;
+    private final long[] receivedLow;
+
+    private long lowPulses;
+    private long highPulses;
+    private long presses;
+    private PulseTraceWriter trace;
+
+    // Zobrist hash of the flip-flop and conjunction state: every flip-flop and every conjunction input gets a
+    // random 64-bit key, and the hash is the XOR of the keys of everything that is currently on/high.
+    // Flipping a bit XORs its key in or out, so the hash is kept up to date as the state changes.
+    private final long[] flipFlopKeys;
+    private final long[] edgeKeys;
+    private long stateHash;
+
+    // Builds the compiled network from the parsed modules. Ids are given out in name order
+    // (with an extra "button" module that has a single edge to the broadcaster).
+    public CompiledPulseNetwork(Map<String, Module> moduleLookup, Broadcaster broadcaster) {
+        Map<String, Module> modules = new TreeMap<>(moduleLookup);
+        modules.put(broadcaster.getName(), broadcaster);
+        modules.put("button", new Module("button", List.of(broadcaster.getName())));
+
+        SortedSet<String> allNames = new TreeSet<>(modules.keySet());
+        for (Module m : modules.values()) {
+            allNames.addAll(m.getDestinationModuleNames());
+        }
+
+        this.names = allNames.toArray(new String[0]);
+        Map<String, Integer> ids = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            ids.put(names[i], i);
+        }
+
+        this.types = new byte[names.length];
+        this.edgeOffsets = new int[names.length + 1];
+        for (int i = 0; i < names.length; i++) {
+            Module m = modules.get(names[i]);
+            if (m instanceof FlipFlop) types[i] = FLIP_FLOP;
+            else if (m instanceof Conjunction) types[i] = CONJUNCTION;
+            else if (m instanceof Broadcaster || (m != null && m.getName().equals("button"))) types[i] = BROADCASTER;
+            else types[i] = SINK;
+
+            edgeOffsets[i + 1] = edgeOffsets[i] + (m == null ? 0 : m.getDestinationModuleNames().size());
+        }
+
+        this.edgeSource = new int[edgeOffsets[names.length]];
+        this.edgeTarget = new int[edgeOffsets[names.length]];
+        this.inputCounts = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            Module m = modules.get(names[i]);
+            if (m == null) continue;
+            int e = edgeOffsets[i];
+            for (String destination : m.getDestinationModuleNames()) {
+                edgeSource[e] = i;
+                edgeTarget[e] = ids.get(destination);
+                inputCounts[edgeTarget[e]]++;
+                e++;
+            }
+        }
+        this.buttonEdge = edgeOffsets[ids.get("button")];
+
+        this.flipFlopOn = new long[(names.length + 63) / 64];
+        this.edgeHigh = new long[(edgeTarget.length + 63) / 64];
+        this.highInputs = new int[names.length];
+        this.watched = new long[(names.length + 63) / 64];
+        this.sentHigh = new long[(names.length + 63) / 64];
+        this.receivedLow = new long[(names.length + 63) / 64];
+
+        SplittableRandom random = new SplittableRandom(20);
+        this.flipFlopKeys = new long[names.length];
+        for (int i = 0; i < names.length; i++) flipFlopKeys[i] = random.nextLong();
+        this.edgeKeys = new long[edgeTarget.length];
+        for (int e = 0; e < edgeTarget.length; e++) edgeKeys[e] = random.nextLong();
+    }
+
+    public int getModuleCount() { return this.names.length; }
+    public String getName(int id) { return this.names[id]; }
+    public byte getType(int id) { return this.types[id]; }
+    public long getLowPulses() { return this.lowPulses; }
+    public long getHighPulses() { return this.highPulses; }
+    public long getPresses() { return this.presses; }
+    public long getStateHash() { return this.stateHash; }
+    public int getEdgeCount() { return this.edgeTarget.length; }
+    public int getEdgeSource(int edge) { return this.edgeSource[edge]; }
+    public int getEdgeTarget(int edge) { return this.edgeTarget[edge]; }
+    long[] getFlipFlopState() { return this.flipFlopOn; }
+    long[] getConjunctionState() { return this.edgeHigh; }
+
+    // Sends every pulse of every following press to the given trace, or stops tracing if it's null.
+    // The trace starts with a snapshot of the current state, so it can be read back from here. Throws an
+    // IllegalStateException if the trace has already got past the network's presses.
+    public void setTrace(PulseTraceWriter trace) {
+        if (trace != null) trace.snapshot(presses, this);
+        this.trace = trace;
+    }
+
+    // Puts the network into the state after the given number of presses, for example one rebuilt by a
+    // PulseTraceReader. The pulse counts start again from zero. If a trace is attached, the loaded state is
+    // written to it as a snapshot, and it can't go back to before the last press already traced.
+    public void loadState(long presses, long[] flipFlopState, long[] conjunctionState) {
+        if (trace != null) trace.checkNotRewound(presses);
+        System.arraycopy(flipFlopState, 0, flipFlopOn, 0, flipFlopOn.length);
+        System.arraycopy(conjunctionState, 0, edgeHigh, 0, edgeHigh.length);
+        Arrays.fill(highInputs, 0);
+        stateHash = 0;
+        for (int i = 0; i < names.length; i++) {
+            if ((flipFlopOn[i >> 6] & (1L << i)) != 0) {
+                stateHash ^= flipFlopKeys[i];
+            }
+        }
+        for (int e = 0; e < edgeTarget.length; e++) {
+            if ((edgeHigh[e >> 6] & (1L << e)) != 0) {
+                highInputs[edgeTarget[e]]++;
+                stateHash ^= edgeKeys[e];
+            }
+        }
+        this.presses = presses;
+        lowPulses = 0;
+        highPulses = 0;
+        if (trace != null) trace.snapshot(presses, this);
+    }
+
+    // Returns the id of the module with the given name, or -1 if there isn't one.
+    public int getId(String name) {
+        int id = Arrays.binarySearch(names, name);
+        return id >= 0 ? id : -1;
+    }
+
+    // Returns the ids of the modules that send pulses to the given module (the button isn't included).
+    public int[] getInputs(int module) {
+        List<Integer> inputs = new ArrayList<>();
+        for (int e = 0; e < edgeTarget.length; e++) {
+            if (edgeTarget[e] == module && !names[edgeSource[e]].equals("button")) {
+                inputs.add(edgeSource[e]);
+            }
+        }
+        return inputs.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // Starts recording whether the given module sends a high pulse or receives a low pulse during each press.
+    public void watch(int module) {
+        watched[module >> 6] |= 1L << module;
+    }
+
+    // Whether the watched module sent a high pulse during the last press.
+    public boolean hasSentHigh(int module) {
+        return (sentHigh[module >> 6] & (1L << module)) != 0;
+    }
+
+    // Whether the watched module received a low pulse during the last press.
+    public boolean hasReceivedLow(int module) {
+        return (receivedLow[module >> 6] & (1L << module)) != 0;
+    }
+
+    // Turns every flip-flop off, makes every conjunction remember low pulses and zeroes the pulse counts.
+    public void reset() {
+        Arrays.fill(flipFlopOn, 0);
+        Arrays.fill(edgeHigh, 0);
+        Arrays.fill(highInputs, 0);
+        lowPulses = 0;
+        highPulses = 0;
+        presses = 0;
+        stateHash = 0;
+    }
+
+    // Pushes the button once, adding the pulses sent (including the button's own) to the pulse counts.
+    public void press() {
+        presses++;
+        if (trace != null) trace.beginPress(presses, this);
+        Arrays.fill(sentHigh, 0);
+        Arrays.fill(receivedLow, 0);
+        int mask = queue.length - 1;
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = buttonEdge * 2;
+
+        while (head != tail) {
+            int packed = queue[head++ & mask];
+            int edge = packed >>> 1;
+            boolean high = (packed & 1) != 0;
+            int module = edgeTarget[edge];
+
+            if (high) highPulses++;
+            else lowPulses++;
+            if (trace != null) trace.event(packed);
+
+            boolean isWatched = (watched[module >> 6] & (1L << module)) != 0;
+            if (isWatched && !high) {
+                receivedLow[module >> 6] |= 1L << module;
+            }
+
+            boolean send;
+            switch (types[module]) {
+                case FLIP_FLOP -> {
+                    // High pulses are ignored. A low pulse flips the module and it sends its new state.
+                    if (high) continue;
+                    flipFlopOn[module >> 6] ^= 1L << module;
+                    stateHash ^= flipFlopKeys[module];
+                    send = (flipFlopOn[module >> 6] & (1L << module)) != 0;
+                }
+                case CONJUNCTION -> {
+                    // Update the memory for this input, then send low only if every input is high.
+                    boolean wasHigh = (edgeHigh[edge >> 6] & (1L << edge)) != 0;
+                    if (wasHigh != high) {
+                        edgeHigh[edge >> 6] ^= 1L << edge;
+                        stateHash ^= edgeKeys[edge];
+                        highInputs[module] += high ? 1 : -1;
+                    }
+                    send = highInputs[module] != inputCounts[module];
+                }
+                case BROADCASTER -> send = high;
+                default -> { continue; }
+            }
+
+            if (isWatched && send) {
+                sentHigh[module >> 6] |= 1L << module;
+            }
+
+            int sendBit = send ? 1 : 0;
+            for (int e = edgeOffsets[module]; e < edgeOffsets[module + 1]; e++) {
+                if (tail - head == queue.length) {
+                    queue = growQueue(queue, head, tail);
+                    mask = queue.length - 1;
+                    tail -= head;
+                    head = 0;
+                }
+                queue[tail++ & mask] = e * 2 + sendBit;
+            }
+        }
+    }
+
+    // Doubles the ring buffer, moving the queued pulses to the start of the new one.
+    private static int[] growQueue(int[] queue, int head, int tail) {
+        int[] grown = new int[queue.length * 2];
+        int mask = queue.length - 1;
+        for (int i = head; i != tail; i++) {
+            grown[i - head] = queue[i & mask];
+        }
+        return grown;
+    }
+}
+
+// A window onto a file that is memory mapped a piece at a time. Reads and writes go straight to the mapped
+// buffer; when the next record doesn't fit in what's left of it, the window is moved to start at the current
+// position. This keeps the amount of mapped memory fixed no matter how big the file gets.
+class MappedFileWindow {
+    private static final int WINDOW_SIZE = 1 << 24;
+
+    private final FileChannel channel;
+    private final FileChannel.MapMode mode;
+    private MappedByteBuffer buffer;
+    private long windowStart;
+
+    MappedFileWindow(FileChannel channel, FileChannel.MapMode mode, long position) throws IOException {
+        this.channel = channel;
+        this.mode = mode;
+        map(position);
+    }
+
+    private void map(long position) throws IOException {
+        long size = WINDOW_SIZE;
+        if (mode == FileChannel.MapMode.READ_ONLY) {
+            size = Math.min(size, channel.size() - position);
+        }
+        this.buffer = channel.map(mode, position, size);
+        this.windowStart = position;
+    }
+
+    // Makes sure the next n bytes are inside the window.
+    MappedByteBuffer ensure(int n) {
+        if (buffer.remaining() < n) {
+            try {
+                map(position());
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        }
+        return buffer;
+    }
+
+    long position() {
+        return windowStart + buffer.position();
+    }
+
+    void seek(long position) throws IOException {
+        if (position < windowStart || position > windowStart + buffer.limit()) {
+            map(position);
+        } else {
+            buffer.position((int) (position - windowStart));
+        }
+    }
+}
+
+// Records every pulse sent in a CompiledPulseNetwork to a compact binary file, through a memory mapped window.
+// The file starts with the network (module names and types, and the sender and receiver of every edge), followed by:
+//   PRESS, press number                          at the start of every press
+//   SNAPSHOT, press number, flip-flop bits, conjunction bits   every snapshotInterval presses, before the PRESS
+//   edge * 2 + (1 if high)                       for every pulse, in the order they're received
+// A pulse is a single int since the edge gives its sender and receiver. The snapshots are what let a
+// PulseTraceReader rebuild the network at any press by starting from the closest snapshot before it.
+// A snapshot is also written when the writer is attached to a network and whenever a state is loaded into it,
+// so a trace always starts with one, even if presses had already been run. The presses in a trace only ever go
+// up, so a state from before the last traced press can't be written to it.
+class PulseTraceWriter implements AutoCloseable {
+    static final int MAGIC = 0x50545243; // "PTRC"
+    static final int PRESS = -1;
+    static final int SNAPSHOT = -2;
+
+    private final FileChannel channel;
+    private final MappedFileWindow window;
+    private final int snapshotInterval;
+    private long lastSnapshot = -1;
+    private long lastPress = -1;
+
+    public PulseTraceWriter(Path path, CompiledPulseNetwork network, int snapshotInterval) throws IOException {
+        if (snapshotInterval <= 0) {
+            throw new IllegalArgumentException("Snapshot interval must be positive: " + snapshotInterval);
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.window = new MappedFileWindow(channel, FileChannel.MapMode.READ_WRITE, 0);
+        this.snapshotInterval = snapshotInterval;
+
+        window.ensure(16).putInt(MAGIC).putInt(snapshotInterval)
+                .putInt(network.getModuleCount()).putInt(network.getEdgeCount());
+        for (int i = 0; i < network.getModuleCount(); i++) {
+            byte[] name = network.getName(i).getBytes(StandardCharsets.UTF_8);
+            window.ensure(5 + name.length).putInt(name.length).put(name).put(network.getType(i));
+        }
+        for (int e = 0; e < network.getEdgeCount(); e++) {
+            window.ensure(8).putInt(network.getEdgeSource(e)).putInt(network.getEdgeTarget(e));
+        }
+    }
+
+    // Called by the network at the start of every press.
+    void beginPress(long press, CompiledPulseNetwork network) {
+        // Snapshot the state after presses 0, snapshotInterval, 2 * snapshotInterval, ...
+        if ((press - 1) % snapshotInterval == 0 && press - 1 != lastSnapshot) {
+            snapshot(press - 1, network);
+        }
+        window.ensure(12).putInt(PRESS).putLong(press);
+        lastPress = press;
+    }
+
+    // Throws an IllegalStateException if the trace has already got past the given number of presses.
+    void checkNotRewound(long presses) {
+        if (presses < lastPress) {
+            throw new IllegalStateException("Pulse trace is already at press " + lastPress
+                    + ", can't go back to " + presses);
+        }
+    }
+
+    // Writes the network's current state as the state after the given number of presses.
+    void snapshot(long presses, CompiledPulseNetwork network) {
+        checkNotRewound(presses);
+        long[] flipFlops = network.getFlipFlopState();
+        long[] conjunctions = network.getConjunctionState();
+        window.ensure(12).putInt(SNAPSHOT).putLong(presses);
+        for (long word : flipFlops) window.ensure(8).putLong(word);
+        for (long word : conjunctions) window.ensure(8).putLong(word);
+        lastSnapshot = presses;
+        lastPress = presses;
+    }
+
+    // Called by the network for every pulse.
+    void event(int packed) {
+        window.ensure(4).putInt(packed);
+    }
+
+    // Cuts the file down to what was written and closes it.
+    @Override
+    public void close() throws IOException {
+        long size = window.position();
+        channel.truncate(size);
+        channel.close();
+    }
+}
+
+// Reads a file written by PulseTraceWriter. Opening it scans the file once to find where each snapshot is,
+// after which the network's state after any press can be rebuilt by loading the closest snapshot before it and
+// applying just the pulses recorded since, without simulating anything.
+class PulseTraceReader implements AutoCloseable {
+    private final FileChannel channel;
+    private final MappedFileWindow window;
+    private final String[] names;
+    private final byte[] types;
+    private final int[] edgeSource;
+    private final int[] edgeTarget;
+    private final int flipFlopWords;
+    private final int conjunctionWords;
+    private final List<Long> snapshotPresses = new ArrayList<>();
+    private final List<Long> snapshotPositions = new ArrayList<>();
+    private final long end;
+    private long lastPress;
+
+    public PulseTraceReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.end = channel.size();
+        this.window = new MappedFileWindow(channel, FileChannel.MapMode.READ_ONLY, 0);
+
+        MappedByteBuffer buffer = window.ensure(16);
+        if (buffer.getInt() != PulseTraceWriter.MAGIC) {
+            throw new IOException("Not a pulse trace: " + path);
+        }
+        buffer.getInt(); // snapshot interval
+        int moduleCount = buffer.getInt();
+        int edgeCount = buffer.getInt();
+
+        this.names = new String[moduleCount];
+        this.types = new byte[moduleCount];
+        for (int i = 0; i < moduleCount; i++) {
+            byte[] name = new byte[window.ensure(4).getInt()];
+            window.ensure(name.length + 1).get(name);
+            names[i] = new String(name, StandardCharsets.UTF_8);
+            types[i] = window.ensure(1).get();
+        }
+
+        this.edgeSource = new int[edgeCount];
+        this.edgeTarget = new int[edgeCount];
+        for (int e = 0; e < edgeCount; e++) {
+            edgeSource[e] = window.ensure(4).getInt();
+            edgeTarget[e] = window.ensure(4).getInt();
+        }
+
+        this.flipFlopWords = (moduleCount + 63) / 64;
+        this.conjunctionWords = (edgeCount + 63) / 64;
+
+        // Index the snapshots.
+        while (window.position() < end) {
+            long position = window.position();
+            int record = window.ensure(4).getInt();
+            if (record == PulseTraceWriter.SNAPSHOT) {
+                long presses = window.ensure(8).getLong();
+                snapshotPresses.add(presses);
+                snapshotPositions.add(position);
+                lastPress = Math.max(lastPress, presses);
+                window.seek(window.position() + 8L * (flipFlopWords + conjunctionWords));
+            } else if (record == PulseTraceWriter.PRESS) {
+                lastPress = window.ensure(8).getLong();
+            }
+        }
+
+        if (snapshotPresses.isEmpty()) {
+            throw new IOException("Pulse trace has no snapshot to start from: " + path);
+        }
+    }
+
+    public String getName(int id) { return this.names[id]; }
+    public long getLastPress() { return this.lastPress; }
+
+    // Returns the flip-flop and conjunction bits (in the layout CompiledPulseNetwork.loadState takes) after the
+    // given number of presses.
+    public long[][] getStateAfter(long press) throws IOException {
+        if (press < snapshotPresses.get(0) || press > lastPress) {
+            throw new IllegalArgumentException("Press " + press + " is not in the trace");
+        }
+
+        // Find the last snapshot taken at or before the press.
+        int snapshot = 0;
+        while (snapshot + 1 < snapshotPresses.size() && snapshotPresses.get(snapshot + 1) <= press) {
+            snapshot++;
+        }
+
+        long[] flipFlops = new long[flipFlopWords];
+        long[] conjunctions = new long[conjunctionWords];
+        window.seek(snapshotPositions.get(snapshot) + 12);
+        for (int i = 0; i < flipFlopWords; i++) flipFlops[i] = window.ensure(8).getLong();
+        for (int i = 0; i < conjunctionWords; i++) conjunctions[i] = window.ensure(8).getLong();
+
+        // Apply the pulses of every press after the snapshot up to and including the one we want. If a later
+        // snapshot comes first, a state was loaded past the presses reached so far, so the rest were never traced.
+        long reached = snapshotPresses.get(snapshot);
+        while (window.position() < end) {
+            int record = window.ensure(4).getInt();
+            if (record == PulseTraceWriter.SNAPSHOT) {
+                if (window.ensure(8).getLong() > press) {
+                    if (reached < press) {
+                        throw new IllegalArgumentException("Press " + press + " is not in the trace");
+                    }
+                    break;
+                }
+                window.seek(window.position() + 8L * (flipFlopWords + conjunctionWords));
+            } else if (record == PulseTraceWriter.PRESS) {
+                long current = window.ensure(8).getLong();
+                if (current > press) break;
+                reached = current;
+            } else {
+                int edge = record >>> 1;
+                boolean high = (record & 1) != 0;
+                int module = edgeTarget[edge];
+                if (types[module] == CompiledPulseNetwork.FLIP_FLOP && !high) {
+                    flipFlops[module >> 6] ^= 1L << module;
+                } else if (types[module] == CompiledPulseNetwork.CONJUNCTION) {
+                    if (high) conjunctions[edge >> 6] |= 1L << edge;
+                    else conjunctions[edge >> 6] &= ~(1L << edge);
+                }
+            }
+        }
+
+        return new long[][] {flipFlops, conjunctions};
+    }
+
+    // Prints every pulse sent during the given press, as "sender -high-> receiver".
+    public void printPress(long press) throws IOException {
+        int snapshot = 0;
+        while (snapshot + 1 < snapshotPresses.size() && snapshotPresses.get(snapshot + 1) < press) {
+            snapshot++;
+        }
+        window.seek(snapshotPositions.get(snapshot));
+
+        boolean inPress = false;
+        while (window.position() < end) {
+            int record = window.ensure(4).getInt();
+            if (record == PulseTraceWriter.SNAPSHOT) {
+                window.seek(window.position() + 8 + 8L * (flipFlopWords + conjunctionWords));
+            } else if (record == PulseTraceWriter.PRESS) {
+                long current = window.ensure(8).getLong();
+                if (current > press) break;
+                inPress = current == press;
+            } else if (inPress) {
+                int edge = record >>> 1;
+                Pulse pulse = (record & 1) != 0 ? Pulse.HIGH : Pulse.LOW;
+                System.out.println(names[edgeSource[edge]] + " -" + pulse.toString().toLowerCase() + "-> "
+                        + names[edgeTarget[edge]]);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
+
+// Total low and high pulses sent over a number of button presses.
+record PulseCounts(long lowPulses, long highPulses) { }
+
 public class Day20_Pulse_Propagation {
+    private static final long MAX_PRESSES = 100_000_000;
+
     public static void main(String[] args) {
         File file = new File("./inputs/day20/day20.txt");
         Map<String, Module> moduleLookup = new HashMap<>();
@@ -150,7 +724,7 @@ public class Day20_Pulse_Propagation {
                 }
             }
 
-            long part1 = part1(moduleLookup, broadcaster);
+            long part1 = part1_cycles(moduleLookup, broadcaster);
             System.out.println("Part 1 is: " + part1);
 
             // Reset all modules to their starting state before performing part 2.
@@ -158,7 +732,7 @@ public class Day20_Pulse_Propagation {
                 moduleLookup.get(name).reset();
             }
 
-            long part2 = part2(moduleLookup, broadcaster);
+            long part2 = part2_auto(moduleLookup, broadcaster);
             System.out.println("Part 2 is: " + part2);
 
         } catch (IOException exception) {
@@ -327,4 +901,172 @@ public class Day20_Pulse_Propagation {
         // that all four modules are set to high.
         return lcm(cycleLengths);
     }
+
+    // Part 1 Compiled: Same as part 1, but simulated on the compiled network.
+    private static long part1_compiled(Map<String, Module> moduleLookup, Broadcaster broadcaster) {
+        CompiledPulseNetwork network = new CompiledPulseNetwork(moduleLookup, broadcaster);
+        for (int i = 0; i < 1000; i++) {
+            network.press();
+        }
+
+        return network.getHighPulses() * network.getLowPulses();
+    }
+
+    // Returns the names of all the modules upstream of the given one (including itself), following connections
+    // backwards until the broadcaster. These are the only modules that can affect what the given module does.
+    private static Set<String> findUpstreamModules(CompiledPulseNetwork network, int module) {
+        Set<String> upstream = new HashSet<>();
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(module);
+
+        while (!stack.isEmpty()) {
+            int current = stack.pop();
+            String name = network.getName(current);
+            if (name.equals("broadcaster") || !upstream.add(name))
+                continue;
+            for (int input : network.getInputs(current)) {
+                stack.push(input);
+            }
+        }
+
+        return upstream;
+    }
+
+    // Counts the presses until the given module first sends a high pulse, simulating only the modules upstream
+    // of it. The broadcaster only keeps its connections into those modules, and anything the upstream modules
+    // send to outside of them is treated as a sink, which is fine since nothing outside can send back in.
+    private static long pressesUntilHigh(Map<String, Module> moduleLookup, Set<String> upstream, String name) {
+        Map<String, Module> subgraph = new HashMap<>();
+        for (String module : upstream) {
+            subgraph.put(module, moduleLookup.get(module));
+        }
+
+        List<String> broadcasterDestinations = new ArrayList<>();
+        for (String destination : moduleLookup.get("broadcaster").getDestinationModuleNames()) {
+            if (upstream.contains(destination)) {
+                broadcasterDestinations.add(destination);
+            }
+        }
+
+        CompiledPulseNetwork network = new CompiledPulseNetwork(subgraph, new Broadcaster(broadcasterDestinations));
+        int id = network.getId(name);
+        network.watch(id);
+
+        for (long presses = 1; presses <= MAX_PRESSES; presses++) {
+            network.press();
+            if (network.hasSentHigh(id))
+                return presses;
+        }
+
+        throw new IllegalStateException(name + " never sent a high pulse within " + MAX_PRESSES + " presses");
+    }
+
+    // Counts the presses until the given module receives a low pulse by simulating the whole network.
+    private static long pressesUntilLow(CompiledPulseNetwork network, int module) {
+        network.reset();
+        network.watch(module);
+
+        for (long presses = 1; presses <= MAX_PRESSES; presses++) {
+            network.press();
+            if (network.hasReceivedLow(module))
+                return presses;
+        }
+
+        throw new IllegalStateException(network.getName(module) + " never received a low pulse within "
+                + MAX_PRESSES + " presses");
+    }
+
+    // Generalized version of part 2 that doesn't need to know the module names of the input.
+    // If the sink is fed by a single conjunction, that conjunction sends a low pulse when all of its inputs
+    // (the feeders) have just sent it a high pulse. If the modules upstream of each feeder don't overlap,
+    // each feeder is its own independent subgraph, so each one is simulated on its own, in parallel, until it
+    // sends a high pulse, and the answer is the LCM of those press counts (the same assumption part 2 makes:
+    // each feeder sends its high pulse on every multiple of its cycle length). If the network isn't shaped like
+    // that, it falls back to simulating the whole network until the sink receives a low pulse.
+    private static long findPressesToLowPulse(Map<String, Module> moduleLookup, Broadcaster broadcaster, String sink) {
+        Map<String, Module> allModules = new HashMap<>(moduleLookup);
+        allModules.put(broadcaster.getName(), broadcaster);
+        CompiledPulseNetwork network = new CompiledPulseNetwork(moduleLookup, broadcaster);
+
+        int sinkId = network.getId(sink);
+        if (sinkId == -1) {
+            throw new IllegalArgumentException("No module sends pulses to " + sink);
+        }
+
+        int[] drivers = network.getInputs(sinkId);
+        if (drivers.length != 1 || network.getType(drivers[0]) != CompiledPulseNetwork.CONJUNCTION) {
+            return pressesUntilLow(network, sinkId);
+        }
+
+        int[] feeders = network.getInputs(drivers[0]);
+        List<Set<String>> subgraphs = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (int feeder : feeders) {
+            Set<String> upstream = findUpstreamModules(network, feeder);
+            for (String name : upstream) {
+                if (!seen.add(name)) {
+                    return pressesUntilLow(network, sinkId);
+                }
+            }
+            subgraphs.add(upstream);
+        }
+
+        List<Long> cycleLengths = IntStream.range(0, feeders.length).parallel()
+                .mapToObj(i -> pressesUntilHigh(allModules, subgraphs.get(i), network.getName(feeders[i])))
+                .toList();
+
+        long result = 1;
+        for (long cycleLength : cycleLengths) {
+            result = lcm(result, cycleLength);
+        }
+        return result;
+    }
+
+    // Part 2 Auto: Same as part 2, but the feeder modules are found from the module graph.
+    private static long part2_auto(Map<String, Module> moduleLookup, Broadcaster broadcaster) {
+        return findPressesToLowPulse(moduleLookup, broadcaster, "rx");
+    }
+
+    // Part 1 Traced: Same as part 1 compiled, but every pulse is recorded to the given trace file. The trace is
+    // then read back to check that the state rebuilt from it after the last press matches the network.
+    private static long part1_traced(Map<String, Module> moduleLookup, Broadcaster broadcaster, Path tracePath)
+            throws IOException {
+        CompiledPulseNetwork network = new CompiledPulseNetwork(moduleLookup, broadcaster);
+        try (PulseTraceWriter trace = new PulseTraceWriter(tracePath, network, 100)) {
+            network.setTrace(trace);
+            for (int i = 0; i < 1000; i++) {
+                network.press();
+            }
+            network.setTrace(null);
+        }
+
+        try (PulseTraceReader reader = new PulseTraceReader(tracePath)) {
+            long[][] state = reader.getStateAfter(reader.getLastPress());
+            if (!Arrays.equals(state[0], network.getFlipFlopState())
+                    || !Arrays.equals(state[1], network.getConjunctionState())) {
+                throw new IllegalStateException("Replayed state doesn't match the simulated state");
+            }
+        }
+
+        return network.getHighPulses() * network.getLowPulses();
+    }
+
+    // Counts the low and high pulses sent over the given number of presses, starting from the initial state,
+    // without having to simulate them all. The network's state hash is used as the fingerprint for the cycle
+    // skipper, which finds when the network comes back to an earlier state and skips the remaining presses a
+    // whole period at a time, adding the pulses sent over a period to the totals for each one skipped.
+    // A repeated hash is checked against a snapshot of the flip-flop and conjunction bits before it's trusted.
+    private static PulseCounts countPulses(CompiledPulseNetwork network, long presses) {
+        network.reset();
+        CycleSkipper.Result result = CycleSkipper.run(network::press, network::getStateHash,
+                () -> new long[][] {network.getFlipFlopState().clone(), network.getConjunctionState().clone()},
+                () -> new long[] {network.getLowPulses(), network.getHighPulses()}, presses);
+        return new PulseCounts(result.counters()[0], result.counters()[1]);
+    }
+
+    // Part 1 Cycles: Same as part 1, but stops simulating as soon as the network returns to an earlier state.
+    private static long part1_cycles(Map<String, Module> moduleLookup, Broadcaster broadcaster) {
+        PulseCounts counts = countPulses(new CompiledPulseNetwork(moduleLookup, broadcaster), 1000);
+        return counts.lowPulses() * counts.highPulses();
+    }
 }
\ No newline at end of file
@@ -10,10 +10,197 @@ import java.util.Queue;
 import java.util.LinkedList;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.Arrays;
 
 record StepState(Point point, int stepsRemaining) { }
 
+// The garden stored as rows of bits, one bit per plot (bit c of a row is column c), so that a whole BFS
+// frontier can be moved one step in all four directions with a few shifts and masks per row.
+// Since every step changes the parity of row + column, the plots reachable in exactly n steps are the ones
+// first reached within n steps with the same parity as n, so only two bitsets of reached plots are kept,
+// one for even distances and one for odd ones.
+class GardenBitGrid {
+    private final int height;
+    private final int width;
+    private final int words;
+    private final long[] open;
+    private final long[][] reached;
+    private long[] frontier;
+    private long[] next;
+
+    GardenBitGrid(char[][] grid) {
+        height = grid.length;
+        width = grid[0].length;
+        words = (width + 63) / 64;
+        open = new long[height * words];
+        reached = new long[][] {new long[height * words], new long[height * words]};
+        frontier = new long[height * words];
+        next = new long[height * words];
+
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                if (grid[row][col] != '#') {
+                    open[row * words + (col >>> 6)] |= 1L << col;
+                }
+            }
+        }
+    }
+
+    // Returns how many plots can be reached in exactly the given number of steps from the start, staying inside
+    // the grid. The BFS stops as soon as no new plots are reached, so the number of steps can be huge.
+    long countReachable(int startRow, int startCol, long steps) {
+        Arrays.fill(reached[0], 0);
+        Arrays.fill(reached[1], 0);
+        Arrays.fill(frontier, 0);
+        frontier[startRow * words + (startCol >>> 6)] = 1L << startCol;
+        reached[0][startRow * words + (startCol >>> 6)] = 1L << startCol;
+
+        for (long distance = 1; distance <= steps; distance++) {
+            if (!expand((int) (distance & 1))) {
+                // A start with no open neighbours can't take even one step.
+                if (distance == 1) return 0;
+                break;
+            }
+        }
+
+        long[] bits = reached[(int) (steps & 1)];
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    // Moves the frontier one step, keeping only open plots that weren't reached before, and adds them to the
+    // reached plots of the given parity. Returns false if there were no new plots.
+    private boolean expand(int parity) {
+        long[] seen = reached[parity];
+        long[] other = reached[parity ^ 1];
+        boolean any = false;
+
+        for (int row = 0; row < height; row++) {
+            int base = row * words;
+            for (int w = 0; w < words; w++) {
+                int i = base + w;
+                // Neighbours to the left and right, carrying bits across the words of the row.
+                long moved = (frontier[i] << 1) | (frontier[i] >>> 1);
+                if (w > 0) moved |= frontier[i - 1] >>> 63;
+                if (w < words - 1) moved |= frontier[i + 1] << 63;
+                // Neighbours above and below.
+                if (row > 0) moved |= frontier[i - words];
+                if (row < height - 1) moved |= frontier[i + words];
+
+                long fresh = moved & open[i] & ~seen[i] & ~other[i];
+                next[i] = fresh;
+                seen[i] |= fresh;
+                any |= fresh != 0;
+            }
+        }
+
+        long[] swap = frontier;
+        frontier = next;
+        next = swap;
+        return any;
+    }
+}
+
+// BFS distances from one entry point to every plot of a single tile, with running counts so that the number of
+// plots of a tile reachable with a number of steps left can be looked up without going over the tile again.
+// evenOrOddWithin[d] is the number of plots at distance at most d with the same parity as d.
+class TileDistances {
+    private static final int[] ROW_STEPS = {-1, 1, 0, 0};
+    private static final int[] COL_STEPS = {0, 0, -1, 1};
+
+    private final long[] evenOrOddWithin;
+
+    TileDistances(char[][] grid, int entryRow, int entryCol) {
+        int height = grid.length;
+        int width = grid[0].length;
+        int[] distances = new int[height * width];
+        Arrays.fill(distances, -1);
+
+        int[] queue = new int[height * width];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = entryRow * width + entryCol;
+        distances[entryRow * width + entryCol] = 0;
+        int maxDistance = 0;
+
+        while (head < tail) {
+            int cell = queue[head++];
+            int row = cell / width;
+            int col = cell % width;
+            maxDistance = distances[cell];
+
+            for (int direction = 0; direction < 4; direction++) {
+                int r = row + ROW_STEPS[direction];
+                int c = col + COL_STEPS[direction];
+                if (r < 0 || r >= height || c < 0 || c >= width || grid[r][c] == '#') continue;
+                if (distances[r * width + c] != -1) continue;
+                distances[r * width + c] = distances[cell] + 1;
+                queue[tail++] = r * width + c;
+            }
+        }
+
+        long[] atDistance = new long[maxDistance + 1];
+        for (int distance : distances) {
+            if (distance != -1) atDistance[distance]++;
+        }
+
+        evenOrOddWithin = new long[maxDistance + 1];
+        for (int d = 0; d <= maxDistance; d++) {
+            evenOrOddWithin[d] = atDistance[d] + (d >= 2 ? evenOrOddWithin[d - 2] : 0);
+        }
+    }
+
+    // Returns how many plots of the tile can be reached in exactly the given number of steps after entering it.
+    long countReachable(long stepsLeft) {
+        if (stepsLeft < 0) return 0;
+        int maxDistance = evenOrOddWithin.length - 1;
+        if (stepsLeft <= maxDistance) return evenOrOddWithin[(int) stepsLeft];
+        // Every plot has been reached, so only the parity matters.
+        return (stepsLeft - maxDistance) % 2 == 0 || maxDistance == 0
+                ? evenOrOddWithin[maxDistance]
+                : evenOrOddWithin[maxDistance - 1];
+    }
+}
+
+// Caches the distance map of a tile for each point it can be entered from. On a square grid where the start's
+// row and column and the edges of the grid have no rocks, the quickest way into any other tile is along those
+// empty lanes: tiles straight above, below, left or right of the start are entered at the middle of the side
+// facing the start, and all others at the corner facing it. So at most nine distance maps are ever needed
+// (the start, four sides and four corners), however many steps are taken.
+class TileDistanceCache {
+    private final char[][] grid;
+    private final Map<Integer, TileDistances> cache = new HashMap<>();
+
+    TileDistanceCache(char[][] grid) {
+        this.grid = grid;
+    }
+
+    TileDistances get(int entryRow, int entryCol) {
+        return cache.computeIfAbsent(entryRow * grid[0].length + entryCol,
+                key -> new TileDistances(grid, entryRow, entryCol));
+    }
+
+    // Returns whether tiles are always entered at a side or corner from the start, as described above.
+    static boolean hasEmptyLanes(char[][] grid, Point start) {
+        int size = grid.length;
+        if (grid[0].length != size) return false;
+        for (int i = 0; i < size; i++) {
+            if (grid[start.x][i] == '#' || grid[i][start.y] == '#') return false;
+            if (grid[0][i] == '#' || grid[size - 1][i] == '#' || grid[i][0] == '#' || grid[i][size - 1] == '#') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
+
 public class Day21_Step_Counter {
+    private static final int MIN_PERIODS = 32;
+    private static final int DIRECT_PERIODS_FACTOR = 4;
+
     public static void main(String[] args) {
         File file = new File("./inputs/day21/day21.txt");
         char[][] grid;
@@ -48,10 +235,10 @@ public class Day21_Step_Counter {
             // Set the start point to an empty cell instead of an 'S'
             grid[start.x][start.y] = '.';
 
-            int part1 = part1(grid, start);
+            int part1 = part1_bits(grid, start);
             System.out.println("Part 1 is: " + part1);
 
-            long part2 = part2();
+            long part2 = part2_cached(grid, start, 26501365);
             System.out.println("Part 2 is: " + part2);
 
         } catch (IOException exception) {
@@ -189,6 +376,14 @@ public class Day21_Step_Counter {
         return uniquePointsYouCouldBeAt.size();
     }
 
+    // Part 1 Bits: Same as part 1, but the grid is kept as rows of bits and the BFS moves the whole frontier
+    // at once with shifts and masks. Plots reached with an even or odd number of steps are kept in two bitsets,
+    // and the answer is the count of the ones with the same parity as 64.
+    private static int part1_bits(char[][] grid, Point start) {
+        GardenBitGrid garden = new GardenBitGrid(grid);
+        return (int) garden.countReachable(start.x, start.y, 64);
+    }
+
     // Part 2: For this problem, we need to make a few observations/assumptions about our input.
     // We observe that:
     // 1. The entire row containing the starting position is empty.
@@ -215,4 +410,209 @@ public class Day21_Step_Counter {
     private static long part2() {
         return 15094 * (long)Math.pow(202300, 2) + ((long)15196 * 202300) + 3835;
     }
+
+    // Returns how many plots can be reached in exactly the given number of steps on the infinitely tiled grid,
+    // for any grid, start and number of steps.
+    // Walking a period (the grid size, or the lcm of both sides if the grid isn't square) further out adds
+    // another ring of tiles around the diamond of reached tiles, and the ring grows by the same number of tiles
+    // each time. So once the walk is far enough from the start for the tiles to settle into that pattern,
+    // the number of plots reached after offset + k * period steps is a quadratic in k, where offset is the
+    // number of steps modulo the period. A BFS on the tiled grid is run one layer at a time, counting the plots
+    // first reached at each distance, until the second differences of those values settle. The rest of the
+    // quadratic is then extrapolated with exact long arithmetic.
+    // On some grids (mostly small or rectangular ones) the edge of the diamond only lines up with the tiles again
+    // every few periods, so the second differences don't settle on one value but on a pattern that repeats.
+    // So the shortest repeating pattern is looked for instead, and it has to repeat at least three more times and
+    // hold over the last half of the values to rule out ones that just happen to line up. A pattern of one is the
+    // plain quadratic.
+    // The number of periods walked while looking for a pattern grows with the grid. If none shows up by then, but
+    // the target is within a few times that many periods, the walk just carries on and counts it directly.
+    private static long countReachableTiled(char[][] grid, Point start, long steps) {
+        int period = lcm(grid.length, grid[0].length);
+        int offset = (int) (steps % period);
+        int maxPeriods = MIN_PERIODS + 8 * Math.max(grid.length, grid[0].length);
+
+        // values.get(k) is the number of plots reachable after offset + k * period steps.
+        List<Long> values = new ArrayList<>();
+        long[] reachedByParity = {1, 0};
+        Set<Point> previous = new HashSet<>();
+        Set<Point> current = new HashSet<>();
+        current.add(start);
+        long distance = 0;
+
+        while (true) {
+            long target = offset + (long) values.size() * period;
+
+            while (distance < target) {
+                Set<Point> next = new HashSet<>();
+                for (Point point : current) {
+                    for (Point neighbor : getNeighborsTiled(grid, point)) {
+                        if (!previous.contains(neighbor) && !current.contains(neighbor)) {
+                            next.add(neighbor);
+                        }
+                    }
+                }
+                distance++;
+
+                // Only finitely many plots can be reached, so nothing changes after this.
+                if (next.isEmpty()) {
+                    if (distance == 1 && steps > 0) return 0;
+                    return reachedByParity[(int) (steps & 1)];
+                }
+
+                reachedByParity[(int) (distance & 1)] += next.size();
+                previous = current;
+                current = next;
+            }
+
+            values.add(reachedByParity[(int) (target & 1)]);
+            if (target == steps) {
+                return values.get(values.size() - 1);
+            }
+
+            int k = values.size() - 1;
+            long periodsLeft = (steps - offset) / period - k;
+            for (int pattern = 1; 4 * pattern + 1 <= k; pattern++) {
+                int window = Math.max(3 * pattern, k / 2);
+                if (k - window - pattern + 1 < 2)
+                    break;
+                if (isRepeating(values, k, pattern, window)) {
+                    return extrapolate(values, k, pattern, periodsLeft);
+                }
+            }
+
+            if (k >= maxPeriods && k + periodsLeft > (long) DIRECT_PERIODS_FACTOR * maxPeriods) {
+                throw new IllegalStateException("Reachable plots didn't settle into a quadratic within "
+                        + maxPeriods + " periods, and " + steps + " steps is too far to walk directly");
+            }
+        }
+    }
+
+    // Returns whether the second differences of the last `window` values repeat every `pattern` values.
+    private static boolean isRepeating(List<Long> values, int k, int pattern, int window) {
+        for (int j = k; j > k - window; j--) {
+            if (secondDifference(values, j) != secondDifference(values, j - pattern)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Extends the values by the given number of periods, assuming their second differences keep repeating every
+    // `pattern` values. The first differences then grow by the same amount (the sum of the pattern) every
+    // `pattern` values, so the total over whole repeats of the pattern is a sum of an arithmetic series, and the
+    // last partial repeat is added up from the pattern itself.
+    private static long extrapolate(List<Long> values, int k, int pattern, long periods) {
+        // growth[t] is how much the first difference grows over the first t values after k.
+        long[] growth = new long[pattern + 1];
+        for (int t = 1; t <= pattern; t++) {
+            growth[t] = growth[t - 1] + secondDifference(values, k + t - pattern);
+        }
+
+        long repeats = periods / pattern;
+        int rest = (int) (periods % pattern);
+        long growthSum = 0;
+        long restGrowthSum = 0;
+        for (int t = 1; t <= pattern; t++) {
+            growthSum += growth[t];
+            if (t <= rest) restGrowthSum += growth[t];
+        }
+
+        // Sum of the growth over every value after k: (m * growth[pattern] + growth[t]) for value m * pattern + t.
+        long previousRepeats = repeats % 2 == 0
+                ? Math.multiplyExact(repeats / 2, repeats - 1)
+                : Math.multiplyExact(repeats, (repeats - 1) / 2);
+        long totalGrowth = Math.addExact(
+                Math.multiplyExact(Math.multiplyExact(previousRepeats, pattern), growth[pattern]),
+                Math.multiplyExact(repeats, growthSum));
+        totalGrowth = Math.addExact(totalGrowth, Math.addExact(
+                Math.multiplyExact(Math.multiplyExact(repeats, rest), growth[pattern]), restGrowthSum));
+
+        long firstDifference = values.get(k) - values.get(k - 1);
+        return Math.addExact(values.get(k),
+                Math.addExact(Math.multiplyExact(periods, firstDifference), totalGrowth));
+    }
+
+    private static long secondDifference(List<Long> values, int k) {
+        return values.get(k) - 2 * values.get(k - 1) + values.get(k - 2);
+    }
+
+    private static int lcm(int a, int b) {
+        int x = a;
+        int y = b;
+        while (y != 0) {
+            int t = x % y;
+            x = y;
+            y = t;
+        }
+        return a / x * b;
+    }
+
+    // Part 2 General: Instead of the quadratic fitted by hand above, which only works for one input, the walk is
+    // simulated on the tiled grid for a few periods and the quadratic is found from the counts automatically.
+    private static long part2_general(char[][] grid, Point start, long steps) {
+        return countReachableTiled(grid, start, steps);
+    }
+
+    // Returns how many plots can be reached in exactly the given number of steps on the infinitely tiled grid,
+    // using the cached distance maps of each entry point. Tiles straight out from the start in one direction are
+    // entered a whole grid size later than the one before, and the diagonal tiles in a quadrant with
+    // |row offset| + |column offset| = m are all entered at the same time, and there are m - 1 of them.
+    // So each ring of tiles is counted at once, and full tiles are looked up the same way as partly reached ones.
+    private static long countReachableCached(char[][] grid, Point start, long steps) {
+        TileDistanceCache cache = new TileDistanceCache(grid);
+        int size = grid.length;
+        int last = size - 1;
+
+        // The steps needed to get from the start into the nearest tile in each direction.
+        int up = start.x + 1;
+        int down = size - start.x;
+        int left = start.y + 1;
+        int right = size - start.y;
+
+        long total = cache.get(start.x, start.y).countReachable(steps);
+
+        total += countStraight(cache.get(last, start.y), up, size, steps);
+        total += countStraight(cache.get(0, start.y), down, size, steps);
+        total += countStraight(cache.get(start.x, last), left, size, steps);
+        total += countStraight(cache.get(start.x, 0), right, size, steps);
+
+        total += countDiagonal(cache.get(last, last), up + left, size, steps);
+        total += countDiagonal(cache.get(last, 0), up + right, size, steps);
+        total += countDiagonal(cache.get(0, last), down + left, size, steps);
+        total += countDiagonal(cache.get(0, 0), down + right, size, steps);
+
+        return total;
+    }
+
+    // Counts the plots reached in the tiles in a straight line from the start, the first entered after `first` steps.
+    private static long countStraight(TileDistances tile, long first, int size, long steps) {
+        long total = 0;
+        for (long entered = first; entered <= steps; entered += size) {
+            total += tile.countReachable(steps - entered);
+        }
+        return total;
+    }
+
+    // Counts the plots reached in the tiles of one quadrant, the first (nearest) tile entered after `first` steps.
+    private static long countDiagonal(TileDistances tile, long first, int size, long steps) {
+        long total = 0;
+        long tiles = 1;
+        for (long entered = first; entered <= steps; entered += size) {
+            total = Math.addExact(total, Math.multiplyExact(tiles, tile.countReachable(steps - entered)));
+            tiles++;
+        }
+        return total;
+    }
+
+    // Part 2 Cached: Same as part 2 general, but nothing outside of a single tile is walked. If the start's row
+    // and column and the edges are empty (like in the puzzle input), the BFS distance map of a tile is computed
+    // once for each side and corner it can be entered from, and the total is added up from those and the number
+    // of tiles entered at each distance from the start. Otherwise, falls back to the tiled walk.
+    private static long part2_cached(char[][] grid, Point start, long steps) {
+        if (!TileDistanceCache.hasEmptyLanes(grid, start)) {
+            return countReachableTiled(grid, start, steps);
+        }
+        return countReachableCached(grid, start, steps);
+    }
 }
\ No newline at end of file
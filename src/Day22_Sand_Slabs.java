@@ -72,6 +72,12 @@ class Brick {
             c.z -= 1;
         }
     }
+    // Drop a brick by the given number of units in the z direction.
+    public void dropBrickBy(int levels) {
+        for (Cube c : cubes) {
+            c.z -= levels;
+        }
+    }
     // Raise a brick by one unit in the z direction.
     public void raiseBrick() {
         for (Cube c : cubes) {
@@ -94,6 +100,246 @@ class Brick {
     }
 }
 
+// The dominator tree of the support graph of a settled brick structure. The graph has an edge from every brick to
+// each brick it supports, plus a virtual ground node with an edge to every brick resting on the ground.
+// Brick a dominates brick b if every path from the ground to b goes through a, which is exactly when
+// disintegrating a makes b fall. So the number of bricks that fall when a brick is disintegrated is the size of
+// its subtree in the dominator tree minus one (itself).
+// The structure is sorted by z, so every brick comes after the bricks supporting it. In a graph visited in that
+// order, the immediate dominator of a brick is the lowest common ancestor in the tree so far of the bricks
+// supporting it. The ancestors are found with binary lifting, so building the tree takes O(n log n).
+class SupportDominators {
+    private static final int GROUND = 0;
+
+    private final int[] depth;
+    private final int[][] ancestors; // ancestors[k][v] is the 2^k-th ancestor of v in the dominator tree.
+    private final int[] subtreeSizes;
+
+    // Builds the tree from the bricks each brick rests on, as a CSR adjacency: brick i of the structure rests on
+    // supporterTargets[supporterOffsets[i]] until supporterTargets[supporterOffsets[i + 1] - 1].
+    // Node 0 is the ground and brick i is node i + 1.
+    SupportDominators(int[] supporterOffsets, int[] supporterTargets) {
+        int nodes = supporterOffsets.length;
+        int levels = 32 - Integer.numberOfLeadingZeros(nodes);
+        depth = new int[nodes];
+        ancestors = new int[levels][nodes];
+        subtreeSizes = new int[nodes];
+
+        for (int v = 1; v < nodes; v++) {
+            int dominator = -1;
+            for (int e = supporterOffsets[v - 1]; e < supporterOffsets[v]; e++) {
+                int u = supporterTargets[e] + 1;
+                dominator = dominator == -1 ? u : lowestCommonAncestor(dominator, u);
+            }
+            if (dominator == -1) dominator = GROUND;
+
+            depth[v] = depth[dominator] + 1;
+            ancestors[0][v] = dominator;
+            for (int k = 1; k < levels; k++) {
+                ancestors[k][v] = ancestors[k - 1][ancestors[k - 1][v]];
+            }
+        }
+
+        // Dominators come before the nodes they dominate, so going backwards sees every subtree before its root.
+        for (int v = nodes - 1; v > 0; v--) {
+            subtreeSizes[v]++;
+            subtreeSizes[ancestors[0][v]] += subtreeSizes[v];
+        }
+        subtreeSizes[GROUND]++;
+    }
+
+    // Builds the tree for a settled structure of brick objects.
+    static SupportDominators of(List<Brick> brickStructure) {
+        Map<Brick, Integer> ids = new IdentityHashMap<>();
+        for (int i = 0; i < brickStructure.size(); i++) {
+            ids.put(brickStructure.get(i), i);
+        }
+
+        int[] offsets = new int[brickStructure.size() + 1];
+        List<Integer> targets = new ArrayList<>();
+        for (int i = 0; i < brickStructure.size(); i++) {
+            for (Brick below : brickStructure.get(i).supportedBy) {
+                targets.add(ids.get(below));
+            }
+            offsets[i + 1] = targets.size();
+        }
+
+        return new SupportDominators(offsets, targets.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    private int lowestCommonAncestor(int a, int b) {
+        if (depth[a] < depth[b]) {
+            int swap = a;
+            a = b;
+            b = swap;
+        }
+        for (int k = ancestors.length - 1; k >= 0; k--) {
+            if (depth[a] - (1 << k) >= depth[b]) a = ancestors[k][a];
+        }
+        if (a == b) return a;
+        for (int k = ancestors.length - 1; k >= 0; k--) {
+            if (ancestors[k][a] != ancestors[k][b]) {
+                a = ancestors[k][a];
+                b = ancestors[k][b];
+            }
+        }
+        return ancestors[0][a];
+    }
+
+    // Returns the number of other bricks that fall when brick i of the structure is disintegrated.
+    int getFallCount(int brick) {
+        return subtreeSizes[brick + 1] - 1;
+    }
+
+    // Returns the sum of the fall counts of every brick.
+    long getTotalFallCount() {
+        long total = 0;
+        for (int v = 1; v < subtreeSizes.length; v++) {
+            total += subtreeSizes[v] - 1;
+        }
+        return total;
+    }
+}
+
+// A settled brick structure stored as a struct of arrays instead of brick objects. Bricks are int ids in
+// settled z order, their coordinates are kept in one int array per axis, and the supports in both directions
+// are CSR adjacencies: brick i supports supportTargets[supportOffsets[i]] until
+// supportTargets[supportOffsets[i + 1] - 1], and rests on the bricks in supporterTargets the same way.
+class CompactBrickStructure {
+    private final int size;
+    private final int[] minX;
+    private final int[] minY;
+    private final int[] minZ;
+    private final int[] maxX;
+    private final int[] maxY;
+    private final int[] maxZ;
+    private final int[] supportOffsets;
+    private final int[] supportTargets;
+    private final int[] supporterOffsets;
+    private final int[] supporterTargets;
+
+    // Takes the bricks as they were in the input, six coordinates each (x1, y1, z1, x2, y2, z2), and lets them
+    // fall with a height map, the same way as settleBricks.
+    CompactBrickStructure(int[] coordinates) {
+        size = coordinates.length / 6;
+        minX = new int[size];
+        minY = new int[size];
+        minZ = new int[size];
+        maxX = new int[size];
+        maxY = new int[size];
+        maxZ = new int[size];
+
+        // Sort by the lowest z, packing it with the input index into a long so that no objects are needed.
+        long[] order = new long[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = (long) Math.min(coordinates[i * 6 + 2], coordinates[i * 6 + 5]) << 32 | i;
+        }
+        Arrays.sort(order);
+
+        int width = 0;
+        int depth = 0;
+        for (int id = 0; id < size; id++) {
+            int i = (int) order[id] * 6;
+            minX[id] = Math.min(coordinates[i], coordinates[i + 3]);
+            minY[id] = Math.min(coordinates[i + 1], coordinates[i + 4]);
+            minZ[id] = Math.min(coordinates[i + 2], coordinates[i + 5]);
+            maxX[id] = Math.max(coordinates[i], coordinates[i + 3]);
+            maxY[id] = Math.max(coordinates[i + 1], coordinates[i + 4]);
+            maxZ[id] = Math.max(coordinates[i + 2], coordinates[i + 5]);
+            width = Math.max(width, maxX[id] + 1);
+            depth = Math.max(depth, maxY[id] + 1);
+        }
+
+        int[] heights = new int[width * depth];
+        int[] topBricks = new int[width * depth];
+        int[] lastSupported = new int[size];
+        Arrays.fill(lastSupported, -1);
+
+        // Every brick is settled after the ones it rests on, so its supporters can be appended in id order.
+        supporterOffsets = new int[size + 1];
+        int[] supporters = new int[Math.max(16, size)];
+        int edges = 0;
+
+        for (int id = 0; id < size; id++) {
+            int height = 0;
+            for (int x = minX[id]; x <= maxX[id]; x++) {
+                for (int y = minY[id]; y <= maxY[id]; y++) {
+                    height = Math.max(height, heights[x * depth + y]);
+                }
+            }
+
+            if (height > 0) {
+                for (int x = minX[id]; x <= maxX[id]; x++) {
+                    for (int y = minY[id]; y <= maxY[id]; y++) {
+                        int cell = x * depth + y;
+                        if (heights[cell] == height && lastSupported[topBricks[cell]] != id) {
+                            lastSupported[topBricks[cell]] = id;
+                            if (edges == supporters.length) supporters = Arrays.copyOf(supporters, edges * 2);
+                            supporters[edges++] = topBricks[cell];
+                        }
+                    }
+                }
+            }
+            supporterOffsets[id + 1] = edges;
+
+            maxZ[id] -= minZ[id] - height - 1;
+            minZ[id] = height + 1;
+            for (int x = minX[id]; x <= maxX[id]; x++) {
+                for (int y = minY[id]; y <= maxY[id]; y++) {
+                    heights[x * depth + y] = maxZ[id];
+                    topBricks[x * depth + y] = id;
+                }
+            }
+        }
+        supporterTargets = Arrays.copyOf(supporters, edges);
+
+        // The supports are the same edges the other way round, grouped with a counting sort.
+        supportOffsets = new int[size + 1];
+        for (int e = 0; e < edges; e++) {
+            supportOffsets[supporterTargets[e] + 1]++;
+        }
+        for (int id = 0; id < size; id++) {
+            supportOffsets[id + 1] += supportOffsets[id];
+        }
+        supportTargets = new int[edges];
+        int[] next = Arrays.copyOf(supportOffsets, size);
+        for (int id = 0; id < size; id++) {
+            for (int e = supporterOffsets[id]; e < supporterOffsets[id + 1]; e++) {
+                supportTargets[next[supporterTargets[e]]++] = id;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    int getSupporterCount(int brick) {
+        return supporterOffsets[brick + 1] - supporterOffsets[brick];
+    }
+
+    // Returns the number of bricks that can be disintegrated without any other brick falling: the bricks where
+    // every brick they support rests on at least one other brick.
+    int countSafeBricks() {
+        int safe = 0;
+        for (int id = 0; id < size; id++) {
+            boolean relied = false;
+            for (int e = supportOffsets[id]; e < supportOffsets[id + 1]; e++) {
+                if (getSupporterCount(supportTargets[e]) == 1) {
+                    relied = true;
+                    break;
+                }
+            }
+            if (!relied) safe++;
+        }
+        return safe;
+    }
+
+    SupportDominators getDominators() {
+        return new SupportDominators(supporterOffsets, supporterTargets);
+    }
+}
+
 public class Day22_Sand_Slabs {
     // Comparator to sort the bricks by ascending z coordinate order.
     static class BrickComparator implements Comparator<Brick> {
@@ -107,39 +353,30 @@ public class Day22_Sand_Slabs {
 
     public static void main(String[] args) {
         File file = new File("./inputs/day22/day22.txt");
-        List<Brick> bricks = new ArrayList<>();
+        int[] coordinates = new int[6 * 1024];
+        int count = 0;
 
         try {
             Scanner sc = new Scanner(file);
 
             while (sc.hasNextLine()) {
                 String line = sc.nextLine();
-                String[] tokens = line.split("~");
-                String[] startTokens = tokens[0].split(",");
-                int startX = Integer.parseInt(startTokens[0]);
-                int startY = Integer.parseInt(startTokens[1]);
-                int startZ = Integer.parseInt(startTokens[2]);
-                Cube start = new Cube(startX, startY, startZ);
-
-                String[] endTokens = tokens[1].split(",");
-                int endX = Integer.parseInt(endTokens[0]);
-                int endY = Integer.parseInt(endTokens[1]);
-                int endZ = Integer.parseInt(endTokens[2]);
-                Cube end = new Cube(endX, endY, endZ);
-
-                bricks.add(new Brick(start, end));
+                String[] tokens = line.split("[,~]");
+                if (count == coordinates.length) {
+                    coordinates = Arrays.copyOf(coordinates, count * 2);
+                }
+                for (String token : tokens) {
+                    coordinates[count++] = Integer.parseInt(token);
+                }
             }
 
-            // Sort the bricks by their z values.
-            bricks.sort(new BrickComparator());
-
             // Fall all the bricks down until they stably rest on one another.
-            List<Brick> brickStructure = constructBrickStructure(bricks);
+            CompactBrickStructure brickStructure = new CompactBrickStructure(Arrays.copyOf(coordinates, count));
 
-            int part1 = part1(brickStructure);
+            int part1 = part1_compact(brickStructure);
             System.out.println("Part 1 is: " + part1);
 
-            int part2 = part2(brickStructure);
+            long part2 = part2_compact(brickStructure);
             System.out.println("Part 2 is: " + part2);
 
         } catch (IOException exception) {
@@ -225,6 +462,69 @@ public class Day22_Sand_Slabs {
         return stableBricks;
     }
 
+    // Given a brick list that is sorted in ascending order by the brick's z value, drops every brick in one go
+    // instead of one level at a time. A height map of the x-y plane keeps the height of the highest cube in
+    // each column and which brick it belongs to. A brick lands one above the highest column under it, and it is
+    // supported by the bricks at the top of the columns of exactly that height. Then its own top is written to
+    // the columns under it. Each brick only looks at the columns under it, so the time is linear in the total
+    // footprint of all the bricks.
+    // Returns the same structure as constructBrickStructure.
+    private static List<Brick> settleBricks(List<Brick> bricks) {
+        int width = 0;
+        int depth = 0;
+        for (Brick brick : bricks) {
+            width = Math.max(width, brick.end.x + 1);
+            depth = Math.max(depth, brick.end.y + 1);
+        }
+
+        int[] heights = new int[width * depth];
+        int[] topBricks = new int[width * depth];
+        int[] lastSupported = new int[bricks.size()];
+        Arrays.fill(lastSupported, -1);
+        List<Brick> stableBricks = new ArrayList<>();
+
+        for (int id = 0; id < bricks.size(); id++) {
+            Brick brick = bricks.get(id);
+
+            int height = 0;
+            for (int x = brick.start.x; x <= brick.end.x; x++) {
+                for (int y = brick.start.y; y <= brick.end.y; y++) {
+                    height = Math.max(height, heights[x * depth + y]);
+                }
+            }
+
+            Brick fallenBrick = new Brick(brick.start, brick.end);
+            fallenBrick.dropBrickBy(brick.start.z - height - 1);
+
+            // Link the brick to each distinct brick it lands on. lastSupported marks the bricks already linked.
+            if (height > 0) {
+                for (int x = brick.start.x; x <= brick.end.x; x++) {
+                    for (int y = brick.start.y; y <= brick.end.y; y++) {
+                        int cell = x * depth + y;
+                        if (heights[cell] == height && lastSupported[topBricks[cell]] != id) {
+                            lastSupported[topBricks[cell]] = id;
+                            Brick stable = stableBricks.get(topBricks[cell]);
+                            fallenBrick.supportedBy.add(stable);
+                            stable.supports.add(fallenBrick);
+                        }
+                    }
+                }
+            }
+
+            int top = height + 1 + brick.end.z - brick.start.z;
+            for (int x = brick.start.x; x <= brick.end.x; x++) {
+                for (int y = brick.start.y; y <= brick.end.y; y++) {
+                    heights[x * depth + y] = top;
+                    topBricks[x * depth + y] = id;
+                }
+            }
+
+            stableBricks.add(fallenBrick);
+        }
+
+        return stableBricks;
+    }
+
     // Part 1: Given a fallen brick structure, the bricks that are safe to remove are:
     // 1) Bricks whose bricks they support are not solely supported by itself.
     // 2) Bricks that don't support any other bricks.
@@ -321,4 +621,21 @@ public class Day22_Sand_Slabs {
 
         return sum;
     }
+
+    // Part 2 Dominators: Instead of a BFS from every brick, builds the dominator tree of the support graph once.
+    // The bricks that fall when a brick is disintegrated are exactly the ones it dominates, so the answer is
+    // the sum of every brick's dominator subtree size minus one.
+    private static long part2_dominators(List<Brick> brickStructure) {
+        return SupportDominators.of(brickStructure).getTotalFallCount();
+    }
+
+    // Part 1 Compact: Same as part 1, but over the struct of arrays layout, where the bricks are just ids.
+    private static int part1_compact(CompactBrickStructure brickStructure) {
+        return brickStructure.countSafeBricks();
+    }
+
+    // Part 2 Compact: Same as part 2 dominators, but the dominator tree is built straight from the CSR supports.
+    private static long part2_compact(CompactBrickStructure brickStructure) {
+        return brickStructure.getDominators().getTotalFallCount();
+    }
 }
\ No newline at end of file
@@ -3,6 +3,13 @@ import java.io.IOException;
 import java.util.Scanner;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.LongUnaryOperator;
 
 record AToBMap(long destinationRangeStart, long sourceRangeStart, long rangeLength) {
     public String toString() {
@@ -10,6 +17,178 @@ record AToBMap(long destinationRangeStart, long sourceRangeStart, long rangeLeng
     }
 }
 
+// Represents a half-open range of values [start, end) used when pushing whole seed ranges through the maps.
+record LongRange(long start, long end) {
+    public String toString() {
+        return "[" + this.start + ", " + this.end + ")";
+    }
+}
+
+// A map stage compiled into sorted primitive arrays. The value space [0, Long.MAX_VALUE) is split into pieces
+// where piece i starts at starts[i] (inclusive), runs until starts[i+1] (exclusive), and maps each value v
+// in it to v + offsets[i]. Gaps between map entries become pieces with an offset of 0 so every value has exactly
+// one piece, and a lookup is just a binary search. The arrays are never modified once built so a single
+// instance can be shared between threads without locking.
+class PiecewiseMap {
+    private final long[] starts;
+    private final long[] offsets;
+
+    private PiecewiseMap(long[] starts, long[] offsets) {
+        this.starts = starts;
+        this.offsets = offsets;
+    }
+
+    // Compiles a map stage for lookups in the source-to-destination direction.
+    // Assumes the entries' source ranges don't overlap, which holds for the puzzle input.
+    public static PiecewiseMap of(List<AToBMap> map) {
+        return compile(map, false);
+    }
+
+    // Compiles a map stage for lookups in the destination-to-source direction.
+    public static PiecewiseMap reversedOf(List<AToBMap> map) {
+        return compile(map, true);
+    }
+
+    private static PiecewiseMap compile(List<AToBMap> map, boolean reversed) {
+        List<AToBMap> entries = new ArrayList<>();
+        for (AToBMap entry : map) {
+            if (reversed) {
+                entries.add(new AToBMap(entry.sourceRangeStart(), entry.destinationRangeStart(), entry.rangeLength()));
+            } else {
+                entries.add(entry);
+            }
+        }
+        entries.sort(Comparator.comparingLong(AToBMap::sourceRangeStart));
+
+        // At most one gap piece before each entry, one piece per entry and one trailing piece.
+        long[] starts = new long[entries.size() * 2 + 1];
+        long[] offsets = new long[entries.size() * 2 + 1];
+        int pieces = 0;
+        long position = 0;
+
+        for (AToBMap entry : entries) {
+            if (entry.sourceRangeStart() > position) {
+                starts[pieces] = position;
+                offsets[pieces++] = 0;
+            }
+            starts[pieces] = entry.sourceRangeStart();
+            offsets[pieces++] = entry.destinationRangeStart() - entry.sourceRangeStart();
+            position = entry.sourceRangeStart() + entry.rangeLength();
+        }
+        starts[pieces] = position;
+        offsets[pieces++] = 0;
+
+        return new PiecewiseMap(Arrays.copyOf(starts, pieces), Arrays.copyOf(offsets, pieces));
+    }
+
+    // Returns the index of the piece containing the given value.
+    private int pieceIndex(long value) {
+        int index = Arrays.binarySearch(starts, value);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    // Given a value, returns the mapped value. Negative values aren't covered by any map and map to themselves.
+    public long apply(long value) {
+        if (value < 0) return value;
+        return value + offsets[pieceIndex(value)];
+    }
+
+    // Returns a single map equivalent to applying this map and then the next one. Each of our pieces is
+    // shifted by its offset into the next map's value space and split wherever it crosses one of the
+    // next map's breakpoints, so the result is still one sorted list of pieces.
+    public PiecewiseMap andThen(PiecewiseMap next) {
+        long[] newStarts = new long[starts.length + next.starts.length * starts.length];
+        long[] newOffsets = new long[newStarts.length];
+        int pieces = 0;
+
+        for (int i = 0; i < starts.length; i++) {
+            long start = starts[i];
+            long end = i + 1 < starts.length ? starts[i + 1] : Long.MAX_VALUE;
+            long offset = offsets[i];
+
+            // Walk the next map's pieces that our mapped piece [start + offset, end + offset) overlaps.
+            int j = next.pieceIndex(Math.max(start + offset, 0));
+            long pieceStart = start;
+            while (true) {
+                newStarts[pieces] = pieceStart;
+                newOffsets[pieces++] = offset + next.offsets[j];
+
+                if (j + 1 >= next.starts.length || next.starts[j + 1] - offset >= end) break;
+                j++;
+                pieceStart = next.starts[j] - offset;
+            }
+        }
+
+        // Merge neighbouring pieces that ended up with the same offset.
+        int merged = 0;
+        for (int i = 0; i < pieces; i++) {
+            if (merged > 0 && newOffsets[merged - 1] == newOffsets[i]) continue;
+            newStarts[merged] = newStarts[i];
+            newOffsets[merged++] = newOffsets[i];
+        }
+
+        return new PiecewiseMap(Arrays.copyOf(newStarts, merged), Arrays.copyOf(newOffsets, merged));
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < starts.length; i++) {
+            sb.append("(").append(starts[i]).append(" -> ").append(offsets[i]).append(")");
+        }
+        return sb.toString();
+    }
+}
+
+// A fork-join task that brute forces the minimum location over the seeds in [start, end). Ranges larger than
+// the threshold are split in half and run in parallel. Each leaf keeps its running minimum in a local long.
+// If a stats map is given, each leaf also records how many seeds it converted and how long it took under its
+// worker thread's name, so the throughput of each thread can be reported once the pool is done.
+class SeedChunkTask extends RecursiveTask<Long> {
+    private static final long serialVersionUID = 1L;
+    private static final long THRESHOLD = 1_000_000;
+
+    private final LongUnaryOperator seedToLocation;
+    private final long start;
+    private final long end;
+    private final Map<String, long[]> threadStats;
+
+    public SeedChunkTask(LongUnaryOperator seedToLocation, long start, long end, Map<String, long[]> threadStats) {
+        this.seedToLocation = seedToLocation;
+        this.start = start;
+        this.end = end;
+        this.threadStats = threadStats;
+    }
+
+    @Override
+    protected Long compute() {
+        if (end - start > THRESHOLD) {
+            long middle = start + (end - start) / 2;
+            SeedChunkTask left = new SeedChunkTask(seedToLocation, start, middle, threadStats);
+            SeedChunkTask right = new SeedChunkTask(seedToLocation, middle, end, threadStats);
+            left.fork();
+            long rightMin = right.compute();
+            return Math.min(left.join(), rightMin);
+        }
+
+        long startTime = System.nanoTime();
+        long minLocation = Long.MAX_VALUE;
+        for (long seed = start; seed < end; seed++) {
+            minLocation = Math.min(seedToLocation.applyAsLong(seed), minLocation);
+        }
+
+        if (threadStats == null) {
+            return minLocation;
+        }
+
+        // Only this thread ever updates its own entry, and joining the task publishes the update.
+        long[] stats = threadStats.computeIfAbsent(Thread.currentThread().getName(), k -> new long[2]);
+        stats[0] += end - start;
+        stats[1] += System.nanoTime() - startTime;
+
+        return minLocation;
+    }
+}
+
 public class Day5_Seed_Fertilizer {
     private static final List<Long> seeds = new ArrayList<>();
     private static final List<AToBMap> seedToSoil = new ArrayList<>();
@@ -146,10 +325,10 @@ public class Day5_Seed_Fertilizer {
                 }
             }
 
-            long part1 = part1();
+            long part1 = part1_composed();
             System.out.println("Part 1 is: " + part1);
 
-            long part2 = part2_better();
+            long part2 = part2_ranges();
             System.out.println("Part 2 is: " + part2);
 
         } catch (IOException exception) {
@@ -243,4 +422,174 @@ public class Day5_Seed_Fertilizer {
             location++;
         }
     }
+
+    // Given a list of ranges, returns the list of ranges they are mapped to using the given map.
+    // Each range is split at the boundaries of the map entries it overlaps: the overlapping piece is shifted
+    // by the entry's offset and the pieces that fall outside the entry are checked against the remaining entries.
+    // Anything that no entry covers maps to itself.
+    private static List<LongRange> getMappedRanges(List<AToBMap> map, List<LongRange> ranges) {
+        List<LongRange> mapped = new ArrayList<>();
+        List<LongRange> unmapped = ranges;
+
+        for (AToBMap entry : map) {
+            long sourceStart = entry.sourceRangeStart();
+            long sourceEnd = entry.sourceRangeStart() + entry.rangeLength();
+            long offset = entry.destinationRangeStart() - entry.sourceRangeStart();
+
+            List<LongRange> stillUnmapped = new ArrayList<>();
+            for (LongRange range : unmapped) {
+                // Piece of the range before this entry.
+                long beforeEnd = Math.min(range.end(), sourceStart);
+                if (range.start() < beforeEnd) {
+                    stillUnmapped.add(new LongRange(range.start(), beforeEnd));
+                }
+
+                // Piece of the range covered by this entry.
+                long overlapStart = Math.max(range.start(), sourceStart);
+                long overlapEnd = Math.min(range.end(), sourceEnd);
+                if (overlapStart < overlapEnd) {
+                    mapped.add(new LongRange(overlapStart + offset, overlapEnd + offset));
+                }
+
+                // Piece of the range after this entry.
+                long afterStart = Math.max(range.start(), sourceEnd);
+                if (afterStart < range.end()) {
+                    stillUnmapped.add(new LongRange(afterStart, range.end()));
+                }
+            }
+            unmapped = stillUnmapped;
+        }
+
+        mapped.addAll(unmapped);
+        return mapped;
+    }
+
+    // Part 2 Ranges: Instead of converting individual seeds (or locations), push the whole seed ranges
+    // through each map at once, splitting them wherever a range crosses a map entry boundary. The lowest
+    // location is then just the smallest start among the final location ranges. The amount of work depends
+    // only on the number of ranges and map entries, not on how many seeds are in each range, so this runs instantly.
+    private static long part2_ranges() {
+        List<LongRange> ranges = new ArrayList<>();
+        for (int i = 0; i < seeds.size() - 1; i += 2) {
+            ranges.add(new LongRange(seeds.get(i), seeds.get(i) + seeds.get(i+1)));
+        }
+
+        ranges = getMappedRanges(seedToSoil, ranges);
+        ranges = getMappedRanges(soilToFertilizer, ranges);
+        ranges = getMappedRanges(fertilizerToWater, ranges);
+        ranges = getMappedRanges(waterToLight, ranges);
+        ranges = getMappedRanges(lightToTemp, ranges);
+        ranges = getMappedRanges(tempToHumidity, ranges);
+        ranges = getMappedRanges(humidityToLocation, ranges);
+
+        long minLocation = Long.MAX_VALUE;
+        for (LongRange range : ranges) {
+            minLocation = Math.min(range.start(), minLocation);
+        }
+        return minLocation;
+    }
+
+    // Compiles all seven stages and composes them into a single seed-to-location map.
+    private static PiecewiseMap buildSeedToLocationMap() {
+        return PiecewiseMap.of(seedToSoil)
+                .andThen(PiecewiseMap.of(soilToFertilizer))
+                .andThen(PiecewiseMap.of(fertilizerToWater))
+                .andThen(PiecewiseMap.of(waterToLight))
+                .andThen(PiecewiseMap.of(lightToTemp))
+                .andThen(PiecewiseMap.of(tempToHumidity))
+                .andThen(PiecewiseMap.of(humidityToLocation));
+    }
+
+    // Compiles all seven stages in reverse and composes them into a single location-to-seed map.
+    private static PiecewiseMap buildLocationToSeedMap() {
+        return PiecewiseMap.reversedOf(humidityToLocation)
+                .andThen(PiecewiseMap.reversedOf(tempToHumidity))
+                .andThen(PiecewiseMap.reversedOf(lightToTemp))
+                .andThen(PiecewiseMap.reversedOf(waterToLight))
+                .andThen(PiecewiseMap.reversedOf(fertilizerToWater))
+                .andThen(PiecewiseMap.reversedOf(soilToFertilizer))
+                .andThen(PiecewiseMap.reversedOf(seedToSoil));
+    }
+
+    // Part 1 Composed: Same as part 1, but every seed goes through one composed seed-to-location map,
+    // which is a single binary search instead of seven linear scans.
+    private static long part1_composed() {
+        PiecewiseMap seedToLocation = buildSeedToLocationMap();
+
+        long minLocation = Long.MAX_VALUE;
+        for (Long seed : seeds) {
+            minLocation = Math.min(seedToLocation.apply(seed), minLocation);
+        }
+        return minLocation;
+    }
+
+    // Part 2 Better Composed: Same search as part 2 better, but each location is reversed to its seed with
+    // one lookup into the composed location-to-seed map.
+    private static long part2_better_composed() {
+        PiecewiseMap locationToSeed = buildLocationToSeedMap();
+        long location = 1;
+
+        while (true) {
+            long seed = locationToSeed.apply(location);
+
+            for (int i = 0; i < seeds.size() - 1; i += 2) {
+                if (seed >= seeds.get(i) && seed < seeds.get(i) + seeds.get(i+1)) {
+                    return location;
+                }
+            }
+
+            location++;
+        }
+    }
+
+    // Runs a seed through all seven maps, the same way part 1 and part 2 do.
+    private static long getLocation(long seed) {
+        long soil = getMappedValue(seedToSoil, seed);
+        long fertilizer = getMappedValue(soilToFertilizer, soil);
+        long water = getMappedValue(fertilizerToWater, fertilizer);
+        long light = getMappedValue(waterToLight, water);
+        long temp = getMappedValue(lightToTemp, light);
+        long humidity = getMappedValue(tempToHumidity, temp);
+        return getMappedValue(humidityToLocation, humidity);
+    }
+
+    // Brute forces the minimum location over every seed range on the common fork-join pool. If threadStats isn't
+    // null, the seeds converted and time spent by each worker thread are recorded in it.
+    private static long findMinLocationParallel(Map<String, long[]> threadStats) {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+
+        long minLocation = Long.MAX_VALUE;
+        for (int i = 0; i < seeds.size() - 1; i += 2) {
+            long start = seeds.get(i);
+            long end = seeds.get(i) + seeds.get(i+1);
+            long rangeMin = pool.invoke(new SeedChunkTask(Day5_Seed_Fertilizer::getLocation, start, end, threadStats));
+            minLocation = Math.min(rangeMin, minLocation);
+        }
+
+        return minLocation;
+    }
+
+    // Part 2 Parallel: Same brute force as part 2, but every seed range is split into chunks that run on a
+    // fork-join pool, one worker per core. The maps are only read, so the threads don't need to share anything
+    // but the final minimum. Useful for checking the faster approaches against.
+    private static long part2_parallel() {
+        return findMinLocationParallel(null);
+    }
+
+    // Runs part 2 parallel and prints the seeds per second each worker thread managed, and the total.
+    private static void benchmark_part2_parallel() {
+        Map<String, long[]> threadStats = new ConcurrentHashMap<>();
+        long startTime = System.nanoTime();
+        long minLocation = findMinLocationParallel(threadStats);
+        long elapsed = System.nanoTime() - startTime;
+
+        long totalSeeds = 0;
+        for (Map.Entry<String, long[]> entry : threadStats.entrySet()) {
+            long[] stats = entry.getValue();
+            totalSeeds += stats[0];
+            System.out.printf("%s: %d seeds, %.0f seeds/s%n", entry.getKey(), stats[0], stats[0] / (stats[1] / 1e9));
+        }
+        System.out.printf("Total: %d seeds on %d threads, %.0f seeds/s (minimum location %d)%n",
+                totalSeeds, threadStats.size(), totalSeeds / (elapsed / 1e9), minLocation);
+    }
 }
\ No newline at end of file